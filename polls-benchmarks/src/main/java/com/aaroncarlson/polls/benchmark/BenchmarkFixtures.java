@@ -0,0 +1,74 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.model.Choice;
+import com.aaroncarlson.polls.model.Poll;
+import com.aaroncarlson.polls.model.PollChoiceRow;
+import com.aaroncarlson.polls.payload.PagedResponse;
+import com.aaroncarlson.polls.payload.PollResponse;
+import com.aaroncarlson.polls.security.UserPrincipal;
+import com.aaroncarlson.polls.util.ModelMapper;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory polls, users and responses shaped like the ones the API returns, for the benchmarks that do not need a
+ * database. Generated from a fixed seed so every run works on the same data.
+ */
+final class BenchmarkFixtures {
+
+    static final int PAGE_SIZE = 30;
+
+    private BenchmarkFixtures() {
+
+    }
+
+    static UserPrincipal userPrincipal(long id) {
+        return new UserPrincipal(id, "User " + id, "user" + id, "user" + id + "@example.com", null,
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")), 0L);
+    }
+
+    static Poll poll(long id, int choiceCount, Random random) {
+        Poll poll = new Poll();
+        poll.setId(id);
+        poll.setQuestion("What is the best answer to question number " + id + "?");
+        poll.setCreatedBy(1L + random.nextInt(1000));
+        poll.setCreatedAt(Instant.now().minus(Duration.ofMinutes(id)));
+        poll.setExpirationDateTime(Instant.now().plus(Duration.ofDays(1)));
+        for (int i = 0; i < choiceCount; i++) {
+            Choice choice = new Choice("Choice " + (i + 1));
+            choice.setId(id * 10 + i);
+            choice.setVoteCount(random.nextInt(10_000));
+            poll.addChoice(choice);
+        }
+        return poll;
+    }
+
+    /**
+     * Rows of a page of polls with 2 to 6 choices each, as read by PollRepository.findPollChoiceRowsByIdIn
+     */
+    static List<PollChoiceRow> pollChoiceRows(Random random) {
+        List<PollChoiceRow> rows = new ArrayList<>();
+        for (long pollId = 1; pollId <= PAGE_SIZE; pollId++) {
+            Poll poll = poll(pollId, 2 + random.nextInt(5), random);
+            poll.getChoices().forEach(choice -> rows.add(new PollChoiceRow(poll.getId(), poll.getQuestion(),
+                    poll.getCreatedAt(), poll.getExpirationDateTime(), null, poll.getCreatedBy(), "user" + poll.getCreatedBy(),
+                    "User " + poll.getCreatedBy(), choice.getId(), choice.getText(), choice.getVoteCount())));
+        }
+        return rows;
+    }
+
+    static PagedResponse<PollResponse> pagedPollResponse(Random random) {
+        List<PollResponse> pollResponses = ModelMapper.mapPollChoiceRowsToPollSkeletons(pollChoiceRows(random)).stream()
+                .map(skeleton -> ModelMapper.mapPollSkeletonToPollResponse(skeleton, Collections.emptyMap(), null))
+                .collect(Collectors.toList());
+        return new PagedResponse<>(pollResponses, 0, PAGE_SIZE, 100_000L, 100_000 / PAGE_SIZE, false);
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.aaroncarlson.polls.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal JSON over HTTP client of the load tests, HttpURLConnection keeps the connections of a thread alive as long as
+ * every response is read to the end
+ */
+final class HttpLoadClient {
+
+    // Status of the requests that failed without a response (connection refused, timeout...)
+    static final int NO_RESPONSE = -1;
+
+    private HttpLoadClient() {
+    }
+
+    static int request(String method, String url, String body, String accessToken) {
+        return send(method, url, body, accessToken, false).status;
+    }
+
+    static Response send(String method, String url, String body, String accessToken, boolean keepBody) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(60_000);
+            connection.setReadTimeout(60_000);
+            if (accessToken != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + accessToken);
+            }
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            // Read the whole response so that the connection is kept alive
+            ByteArrayOutputStream responseBody = keepBody ? new ByteArrayOutputStream() : null;
+            try (InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (inputStream != null) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = inputStream.read(buffer)) >= 0) {
+                        if (responseBody != null) {
+                            responseBody.write(buffer, 0, read);
+                        }
+                    }
+                }
+            }
+            return new Response(status, responseBody == null ? null : new String(responseBody.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException exception) {
+            return new Response(NO_RESPONSE, null);
+        }
+    }
+
+    static final class Response {
+
+        final int status;
+        final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+}
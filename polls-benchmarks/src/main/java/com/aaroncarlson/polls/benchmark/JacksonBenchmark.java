@@ -0,0 +1,44 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.payload.PagedResponse;
+import com.aaroncarlson.polls.payload.PollResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing a page of polls (the body of GET /api/polls), with the ObjectMapper configured like the one of
+ * polls-server (see the Jackson properties of application.properties)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JacksonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private PagedResponse<PollResponse> pagedResponse;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .timeZone(TimeZone.getTimeZone("UTC"))
+                .build();
+        pagedResponse = BenchmarkFixtures.pagedPollResponse(new Random(42));
+    }
+
+    @Benchmark
+    public byte[] serializePageOfPolls() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(pagedResponse);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of issuing a JWT, of parsing it through JwtTokenProvider (which caches the validated claims) and of the full
+ * signature check and decoding that every cache miss pays
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    private static final String JWT_SECRET = "JWTSuperSecretKey";
+
+    private AnnotationConfigApplicationContext context;
+    private JwtTokenProvider tokenProvider;
+    private Authentication authentication;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("app.jwtSecret", JWT_SECRET);
+        properties.put("app.jwtExpirationInMs", "604800000");
+        properties.put("app.jwtCacheMaxSize", "100000");
+
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(JwtTokenProvider.class);
+        context.refresh();
+
+        tokenProvider = context.getBean(JwtTokenProvider.class);
+        authentication = new UsernamePasswordAuthenticationToken(BenchmarkFixtures.userPrincipal(1L), null);
+        token = tokenProvider.generateToken(authentication);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return tokenProvider.generateToken(authentication);
+    }
+
+    @Benchmark
+    public Claims parseToken() {
+        return tokenProvider.parseToken(token);
+    }
+
+    @Benchmark
+    public Claims parseAndValidateWithoutCache() {
+        return Jwts.parser().setSigningKey(JWT_SECRET).parseClaimsJws(token).getBody();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.model.PollChoiceRow;
+import com.aaroncarlson.polls.model.PollSkeleton;
+import com.aaroncarlson.polls.payload.PollResponse;
+import com.aaroncarlson.polls.util.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the two mappings of PollService.getPollResponses for a page of polls: projection rows into PollSkeletons
+ * (polls missing from the PollSkeletonCache), and cached PollSkeletons merged with their live counts into PollResponse
+ * payloads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelMapperBenchmark {
+
+    private List<PollChoiceRow> pollChoiceRows;
+    private List<PollSkeleton> skeletons;
+    private Map<Long, Long> choiceVotesMap;
+
+    @Setup
+    public void setUp() {
+        pollChoiceRows = BenchmarkFixtures.pollChoiceRows(new Random(42));
+        skeletons = ModelMapper.mapPollChoiceRowsToPollSkeletons(pollChoiceRows);
+        choiceVotesMap = new HashMap<>();
+        pollChoiceRows.forEach(row -> choiceVotesMap.put(row.getChoiceId(), row.getChoiceVoteCount()));
+    }
+
+    // Cache miss path of PollService
+    @Benchmark
+    public List<PollSkeleton> mapPageOfPollChoiceRows() {
+        return ModelMapper.mapPollChoiceRowsToPollSkeletons(pollChoiceRows);
+    }
+
+    // Cache hit path of PollService: only the live counts are merged into the cached skeletons
+    @Benchmark
+    public List<PollResponse> mapPageOfPollSkeletons() {
+        List<PollResponse> pollResponses = new ArrayList<>(skeletons.size());
+        for (PollSkeleton skeleton : skeletons) {
+            pollResponses.add(ModelMapper.mapPollSkeletonToPollResponse(skeleton, choiceVotesMap,
+                    skeleton.getChoices().get(0).getId()));
+        }
+        return pollResponses;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.payload.PagedResponse;
+import com.aaroncarlson.polls.payload.PollResponse;
+import com.aaroncarlson.polls.service.PollService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a page of polls whose three reads all go to the database (poll skeleton cache too small to hold a page,
+ * random users whose votes are not indexed yet), with every SQL statement taking statementDelayMs longer (see
+ * SlowStatementInspector), read one after the other or concurrently (app.parallelQueries.enabled).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParallelQueriesBenchmark {
+
+    @Param({"false", "true"})
+    private boolean parallelQueries;
+    @Param({"0", "5"})
+    private long statementDelayMs;
+
+    private PollsServerFixture server;
+    private PollService pollService;
+    private int pageCount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SlowStatementInspector.delayMillis = 0;
+        server = PollsServerFixture.start(10_000, 200_000, false,
+                "--app.parallelQueries.enabled=" + parallelQueries,
+                "--app.pollCache.maxSize=1",
+                "--app.trending.replayOnStartup=false",
+                "--spring.jpa.properties.hibernate.session_factory.statement_inspector=" + SlowStatementInspector.class.getName());
+        SlowStatementInspector.delayMillis = statementDelayMs;
+        pollService = server.getBean(PollService.class);
+        pageCount = server.getPollCount() / BenchmarkFixtures.PAGE_SIZE;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SlowStatementInspector.delayMillis = 0;
+        server.close();
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getAllPollsColdPage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return pollService.getAllPolls(BenchmarkFixtures.userPrincipal(1 + random.nextInt(PollsServerFixture.VOTER_COUNT)),
+                random.nextInt(pageCount), BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.payload.ConditionalResponse;
+import com.aaroncarlson.polls.payload.PagedResponse;
+import com.aaroncarlson.polls.payload.PollResponse;
+import com.aaroncarlson.polls.payload.VoteRequest;
+import com.aaroncarlson.polls.security.UserPrincipal;
+import com.aaroncarlson.polls.service.PollService;
+import com.aaroncarlson.polls.util.Cursor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PollService read and vote paths against an embedded H2 database (see PollsServerFixture). The database is seeded
+ * again for every benchmark method, votes cast by castVote do not leak into the other benchmarks.
+ * Run with -p voteTallyEnabled=true to compare with the in-memory vote tally, and getHomeFeed with
+ * -p feedFanOutMaxFollowers=0 to read the followed polls from the polls table (fan-out on read) rather than from the
+ * precomputed feed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PollServiceBenchmark {
+
+    // Offset pagination deep into the feed (or its last page for small feeds), compared with the cursor reaching
+    // the same polls
+    private static final int DEEP_PAGE = 300;
+    private static final int DASHBOARD_SIZE = 40;
+
+    @Param("10000")
+    private int pollCount;
+    @Param("1000000")
+    private int voteCount;
+    @Param("false")
+    private boolean voteTallyEnabled;
+    @Param("10000")
+    private long feedFanOutMaxFollowers;
+
+    private PollsServerFixture server;
+    private PollService pollService;
+    private UserPrincipal currentUser;
+    private int deepPage;
+    private String deepPageCursor;
+    private String firstPageETag;
+    private final AtomicLong castVotes = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = PollsServerFixture.start(pollCount, voteCount, voteTallyEnabled,
+                "--app.feed.fanOutMaxFollowers=" + feedFanOutMaxFollowers);
+        pollService = server.getBean(PollService.class);
+        currentUser = BenchmarkFixtures.userPrincipal(1L);
+
+        // Cursor of the last poll of the page before the deep page
+        deepPage = Math.min(DEEP_PAGE, pollCount / BenchmarkFixtures.PAGE_SIZE - 1);
+        deepPageCursor = server.getBean(JdbcTemplate.class).queryForObject(
+                "SELECT created_at, id FROM polls ORDER BY created_at DESC, id DESC LIMIT 1 OFFSET ?",
+                (resultSet, rowNumber) -> Cursor.encode(resultSet.getTimestamp("created_at").toInstant(), resultSet.getLong("id")),
+                deepPage * BenchmarkFixtures.PAGE_SIZE - 1);
+        firstPageETag = pollService.getAllPolls(currentUser, 0, BenchmarkFixtures.PAGE_SIZE, null).getETag();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getAllPolls() {
+        return pollService.getAllPolls(currentUser, 0, BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+    // Refresh of a client that already has the first page (If-None-Match), 304 Not Modified
+    @Benchmark
+    public ConditionalResponse<PagedResponse<PollResponse>> getAllPollsNotModified() {
+        return pollService.getAllPolls(currentUser, 0, BenchmarkFixtures.PAGE_SIZE, firstPageETag);
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getAllPollsAnonymous() {
+        return pollService.getAllPolls(null, 0, BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getAllPollsDeepPage() {
+        return pollService.getAllPolls(currentUser, deepPage, BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getAllPollsDeepCursor() {
+        return pollService.getAllPolls(currentUser, deepPageCursor, BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+    @Benchmark
+    public PollResponse getPollById() {
+        long pollId = 1 + ThreadLocalRandom.current().nextInt(server.getPollCount());
+        return pollService.getPollById(pollId, currentUser, null).getBody();
+    }
+
+    // A dashboard of DASHBOARD_SIZE given polls, read at once and one poll at a time
+    @Benchmark
+    public List<PollResponse> getPollsByIds() {
+        return pollService.getPollsByIds(randomPollIds(), currentUser, null).getBody();
+    }
+
+    @Benchmark
+    public List<PollResponse> getPollsByIdOneByOne() {
+        List<PollResponse> pollResponses = new ArrayList<>();
+        for (Long pollId : randomPollIds()) {
+            pollResponses.add(pollService.getPollById(pollId, currentUser, null).getBody());
+        }
+        return pollResponses;
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getPollsVotedBy() {
+        return pollService.getPollsVotedBy(currentUser.getUsername(), currentUser, 0, BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+    // First page of the home feed of user 1, which follows PollsServerFixture.FOLLOWED_COUNT users
+    @Benchmark
+    public PagedResponse<PollResponse> getHomeFeed() {
+        return pollService.getHomeFeed(currentUser, null, BenchmarkFixtures.PAGE_SIZE, null).getBody();
+    }
+
+    @Benchmark
+    public PollResponse castVote() {
+        // Every (poll, fresh voter) pair is used once: all the polls are voted by a fresh voter before the next one
+        long castVote = castVotes.getAndIncrement();
+        long pollId = 1 + castVote % server.getPollCount();
+        long userId = PollsServerFixture.VOTER_COUNT + 1 + castVote / server.getPollCount();
+
+        VoteRequest voteRequest = new VoteRequest();
+        voteRequest.setChoiceId(server.getFirstChoiceId(pollId) + castVote % server.getChoiceCount(pollId));
+        return pollService.castVoteAndGetUpdatedPoll(pollId, voteRequest, BenchmarkFixtures.userPrincipal(userId));
+    }
+
+    private List<Long> randomPollIds() {
+        List<Long> pollIds = new ArrayList<>(DASHBOARD_SIZE);
+        for (int i = 0; i < DASHBOARD_SIZE; i++) {
+            pollIds.add(1L + ThreadLocalRandom.current().nextInt(server.getPollCount()));
+        }
+        return pollIds;
+    }
+
+}
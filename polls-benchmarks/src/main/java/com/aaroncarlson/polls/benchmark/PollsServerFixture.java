@@ -0,0 +1,193 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.aaroncarlson.polls.PollsApplication;
+import com.aaroncarlson.polls.config.IdGeneratorAligner;
+import com.aaroncarlson.polls.repository.ChoiceRepository;
+import com.aaroncarlson.polls.repository.UserRepository;
+import com.aaroncarlson.polls.service.HomeFeed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Boots polls-server (its web server listens on a random port, the JMH benchmarks call the services directly) against
+ * an in-memory H2 database seeded with:
+ *  - the roles (ROLE_USER, ROLE_ADMIN)
+ *  - VOTER_COUNT users that create the polls and cast the seeded votes
+ *  - pollCount polls of 2 to 6 choices, one created every second, none of them expired
+ *  - voteCount votes spread unevenly over the polls (from half to one and a half times the average per poll)
+ *  - FRESH_VOTER_COUNT users that have not voted yet, for the benchmarks that cast votes
+ *  - user 1 following FOLLOWED_COUNT of the users, their polls fill its home feed
+ * The data is generated from a fixed seed, every run gets the same database.
+ */
+@Slf4j
+class PollsServerFixture implements AutoCloseable {
+
+    static final int VOTER_COUNT = 20_000;
+    static final int FRESH_VOTER_COUNT = 20_000;
+    static final int FOLLOWED_COUNT = 200;
+
+    // Password of every seeded user, their usernames are "user" + id
+    static final String PASSWORD = "benchmark";
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final ConfigurableApplicationContext context;
+    private final int pollCount;
+    private final long[] firstChoiceIds;
+    private final int[] choiceCounts;
+
+    private PollsServerFixture(ConfigurableApplicationContext context, int pollCount) {
+        this.context = context;
+        this.pollCount = pollCount;
+        this.firstChoiceIds = new long[pollCount + 1];
+        this.choiceCounts = new int[pollCount + 1];
+    }
+
+    static PollsServerFixture start(int pollCount, int voteCount, boolean voteTallyEnabled, String... extraArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=0",
+                "--management.server.port=-1",
+                "--spring.datasource.url=jdbc:h2:mem:polls-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=benchmark",
+                "--spring.datasource.initialization-mode=never",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--app.voteCountReconcileOnStartup=false",
+                "--app.voteTally.enabled=" + voteTallyEnabled));
+        args.addAll(Arrays.asList(extraArgs));
+        ConfigurableApplicationContext context = SpringApplication.run(PollsApplication.class, args.toArray(new String[0]));
+
+        PollsServerFixture fixture = new PollsServerFixture(context, pollCount);
+        fixture.seed(voteCount);
+        return fixture;
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    int getPort() {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    int getPollCount() {
+        return pollCount;
+    }
+
+    long getFirstChoiceId(long pollId) {
+        return firstChoiceIds[(int) pollId];
+    }
+
+    int getChoiceCount(long pollId) {
+        return choiceCounts[(int) pollId];
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private void seed(int voteCount) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Random random = new Random(42);
+        Instant now = Instant.now();
+        Instant firstPollCreatedAt = now.minus(Duration.ofSeconds(pollCount)).minus(Duration.ofDays(1));
+        long startedAt = System.currentTimeMillis();
+        String passwordHash = new BCryptPasswordEncoder().encode(PASSWORD);
+
+        // Roles, users signing up through AuthController get ROLE_USER
+        jdbcTemplate.update("INSERT INTO roles (name) VALUES ('ROLE_USER'), ('ROLE_ADMIN')");
+
+        // Users
+        List<Object[]> users = new ArrayList<>();
+        for (long userId = 1; userId <= VOTER_COUNT + FRESH_VOTER_COUNT; userId++) {
+            users.add(new Object[]{userId, Timestamp.from(now), Timestamp.from(now), "user" + userId + "@example.com",
+                    "User " + userId, passwordHash, 0L, 0L, 0L, 0L, false, "user" + userId});
+        }
+        batchInsert(jdbcTemplate, "INSERT INTO users (id, created_at, updated_at, email, name, password, " +
+                "security_version, poll_count, vote_count, follower_count, fan_out_on_read, username) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", users);
+
+        // Polls and Choices
+        List<Object[]> polls = new ArrayList<>();
+        List<Object[]> choices = new ArrayList<>();
+        long choiceId = 1;
+        for (long pollId = 1; pollId <= pollCount; pollId++) {
+            Timestamp createdAt = Timestamp.from(firstPollCreatedAt.plusSeconds(pollId));
+            long creatorId = 1 + random.nextInt(VOTER_COUNT);
+            polls.add(new Object[]{pollId, createdAt, createdAt, creatorId, creatorId,
+                    Timestamp.from(now.plus(Duration.ofDays(7))), "What is the best answer to question number " + pollId + "?"});
+
+            firstChoiceIds[(int) pollId] = choiceId;
+            choiceCounts[(int) pollId] = 2 + random.nextInt(5);
+            for (int i = 0; i < choiceCounts[(int) pollId]; i++) {
+                choices.add(new Object[]{choiceId++, pollId, "Choice " + (i + 1), 0L});
+            }
+        }
+        batchInsert(jdbcTemplate, "INSERT INTO polls (id, created_at, updated_at, created_by, updated_by, " +
+                "expiration_date_time, question) VALUES (?, ?, ?, ?, ?, ?, ?)", polls);
+        batchInsert(jdbcTemplate, "INSERT INTO choices (id, poll_id, text, vote_count) VALUES (?, ?, ?, ?)", choices);
+
+        // Votes, every poll is voted by a run of consecutive users starting at a random one
+        List<Object[]> votes = new ArrayList<>(BATCH_SIZE);
+        long voteId = 1;
+        int averageVotesPerPoll = voteCount / pollCount;
+        for (long pollId = 1; pollId <= pollCount; pollId++) {
+            int pollVoteCount = Math.min(VOTER_COUNT, averageVotesPerPoll / 2 + random.nextInt(averageVotesPerPoll + 1));
+            int firstVoter = random.nextInt(VOTER_COUNT);
+            Instant pollCreatedAt = firstPollCreatedAt.plusSeconds(pollId);
+            for (int i = 0; i < pollVoteCount; i++) {
+                long userId = 1 + (firstVoter + i) % VOTER_COUNT;
+                long votedChoiceId = firstChoiceIds[(int) pollId] + random.nextInt(choiceCounts[(int) pollId]);
+                Timestamp createdAt = Timestamp.from(pollCreatedAt.plusMillis(i));
+                votes.add(new Object[]{voteId++, createdAt, createdAt, votedChoiceId, pollId, userId});
+                if (votes.size() == BATCH_SIZE) {
+                    insertVotes(jdbcTemplate, votes);
+                    votes.clear();
+                }
+            }
+        }
+        insertVotes(jdbcTemplate, votes);
+
+        // Materialized counters and id generators, as polls-server does it on startup
+        context.getBean(ChoiceRepository.class).recomputeVoteCounts();
+        context.getBean(UserRepository.class).recomputeActivityCounts();
+        context.getBean(IdGeneratorAligner.class).alignIdGenerators();
+
+        // Follows of user 1, the latest polls of every followed user are backfilled into its feed
+        HomeFeed homeFeed = context.getBean(HomeFeed.class);
+        for (long userId = 2; userId <= FOLLOWED_COUNT + 1; userId++) {
+            homeFeed.follow(1L, "user" + userId);
+        }
+
+        log.warn("Seeded {} users, {} polls, {} choices and {} votes in {} ms", users.size(), pollCount,
+                choiceId - 1, voteId - 1, System.currentTimeMillis() - startedAt);
+    }
+
+    private void insertVotes(JdbcTemplate jdbcTemplate, List<Object[]> votes) {
+        jdbcTemplate.batchUpdate("INSERT INTO votes (id, created_at, updated_at, choice_id, poll_id, user_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", votes);
+    }
+
+    private void batchInsert(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.aaroncarlson.polls.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test (not a JMH benchmark) of the per-endpoint bulkheads of polls-server during a slow database moment
+ * (every SQL statement takes STATEMENT_DELAY_MS longer, see SlowStatementInspector): a spike of /api/polls requests
+ * runs while a few clients keep signing in, the latency of the sign-ins shows whether the spike starves the other
+ * endpoints. Controllers blocking on JDBC run on the bounded request executor either way, the test runs twice
+ * against the same seeded database:
+ *  - unlimited: no per-endpoint bulkhead, the spike fills the queue of the request executor
+ *  - bulkhead: requests over the limit of their endpoint are rejected before they queue
+ * Tomcat is limited to TOMCAT_THREADS threads so that the spike exhausts it with a handful of clients. Spike clients
+ * whose request is rejected (503) pause REJECTED_PAUSE_MS before the next one, as clients honouring Retry-After would.
+ *
+ * java -cp target/benchmarks.jar com.aaroncarlson.polls.benchmark.RequestBulkheadLoadTest [seconds] [spikeClients]
+ */
+public class RequestBulkheadLoadTest {
+
+    private static final int TOMCAT_THREADS = 32;
+    private static final int SIGNIN_CLIENTS = 2;
+    private static final int POLL_COUNT = 5_000;
+    private static final int VOTE_COUNT = 200_000;
+    private static final int WARMUP_SECONDS = 5;
+    private static final long STATEMENT_DELAY_MS = 20;
+    private static final long REJECTED_PAUSE_MS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int spikeClients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        List<String> report = new ArrayList<>();
+        report.add(run("unlimited", seconds, spikeClients, "--app.bulkhead.enabled=false"));
+        report.add(run("bulkhead", seconds, spikeClients, "--app.bulkhead.enabled=true"));
+
+        System.out.println();
+        System.out.printf("%-13s %12s %12s %10s %10s %10s %10s %10s%n",
+                "mode", "polls ok/s", "polls 503/s", "signins", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        report.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    private static String run(String mode, int seconds, int spikeClients, String... modeArgs) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(modeArgs));
+        args.add("--server.tomcat.max-threads=" + TOMCAT_THREADS);
+        args.add("--app.trending.replayOnStartup=false");
+        args.add("--spring.jpa.properties.hibernate.session_factory.statement_inspector=" + SlowStatementInspector.class.getName());
+
+        // Seed the database at full speed
+        SlowStatementInspector.delayMillis = 0;
+
+        try (PollsServerFixture fixture = PollsServerFixture.start(POLL_COUNT, VOTE_COUNT, false, args.toArray(new String[0]))) {
+            SlowStatementInspector.delayMillis = STATEMENT_DELAY_MS;
+            String baseUrl = "http://localhost:" + fixture.getPort() + "/api";
+            int lastPage = POLL_COUNT / 30 - 1;
+
+            AtomicLong pollsOk = new AtomicLong();
+            AtomicLong pollsRejected = new AtomicLong();
+            ConcurrentLinkedQueue<Long> signinNanos = new ConcurrentLinkedQueue<>();
+            long warmupEndsAt = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+            long endsAt = warmupEndsAt + seconds * 1_000_000_000L;
+
+            List<Thread> clients = new ArrayList<>();
+            for (int i = 0; i < spikeClients; i++) {
+                clients.add(new Thread(() -> {
+                    while (System.nanoTime() < endsAt) {
+                        int page = ThreadLocalRandom.current().nextInt(lastPage);
+                        int status = HttpLoadClient.request("GET", baseUrl + "/polls?size=30&page=" + page, null, null);
+                        if (System.nanoTime() > warmupEndsAt) {
+                            (status == 200 ? pollsOk : pollsRejected).incrementAndGet();
+                        }
+                        if (status == 503) {
+                            pause(REJECTED_PAUSE_MS);
+                        }
+                    }
+                }, "spike-" + i));
+            }
+            for (int i = 0; i < SIGNIN_CLIENTS; i++) {
+                Random random = new Random(i);
+                clients.add(new Thread(() -> {
+                    while (System.nanoTime() < endsAt) {
+                        long userId = 1 + random.nextInt(PollsServerFixture.VOTER_COUNT);
+                        String body = "{\"usernameOrEmail\":\"user" + userId + "\",\"password\":\""
+                                + PollsServerFixture.PASSWORD + "\"}";
+                        long startedAt = System.nanoTime();
+                        int status = HttpLoadClient.request("POST", baseUrl + "/auth/signin", body, null);
+                        if (status == 200 && startedAt > warmupEndsAt) {
+                            signinNanos.add(System.nanoTime() - startedAt);
+                        }
+                    }
+                }, "signin-" + i));
+            }
+
+            clients.forEach(Thread::start);
+            for (Thread client : clients) {
+                client.join();
+            }
+
+            long[] latencies = signinNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            return String.format("%-13s %12.1f %12.1f %10d %10.1f %10.1f %10.1f %10.1f", mode,
+                    pollsOk.get() / (double) seconds, pollsRejected.get() / (double) seconds, latencies.length,
+                    percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.90),
+                    percentileMillis(latencies, 0.99), percentileMillis(latencies, 1.0));
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.aaroncarlson.polls.benchmark;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate StatementInspector that makes every SQL statement take delayMillis longer, simulating a slow database
+ * moment: the statement holds its thread and JDBC connection without using CPU, as waiting on MySQL would.
+ * Hibernate instantiates the inspector itself, hence the static delay.
+ */
+public class SlowStatementInspector implements StatementInspector {
+
+    static volatile long delayMillis;
+
+    @Override
+    public String inspect(String sql) {
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return sql;
+    }
+
+}
@@ -0,0 +1,430 @@
+package com.aaroncarlson.polls.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator (not a JMH benchmark) of the vote ingestion path, to reproduce a viral poll before shipping a fix.
+ * It boots polls-server against the seeded H2 database of PollsServerFixture, signs up `users` synthetic users through
+ * /api/auth/signup (and signs them in), then `clients` threads drive a weighted mix of:
+ *  - castVote: POST /api/polls/{pollId}/votes, a user never votes twice in the same poll
+ *  - getPolls: GET /api/polls, the first page three times out of four, one of the next 9 pages otherwise
+ *  - getPollById: GET /api/polls/{pollId}
+ * hotPollShare of the votes and of the poll reads go to the hotPolls most recent polls (the top of the first page),
+ * the others to any poll. Every request is made by a signed in user, the users are split between the clients.
+ *
+ * Latencies are recorded in HdrHistograms once the warmup is over. Clients run a closed loop unless `rate` is set: they
+ * then send rate requests per second in total on a fixed schedule and latencies are measured from the time a request
+ * was due, so that a stalled server is not hidden by clients waiting for it (coordinated omission).
+ * Arguments starting with -- are passed to polls-server (e.g. --app.bulkhead.enabled=false).
+ * The report (throughput, p50/p90/p99/p99.9/max in milliseconds, errors per operation) is printed, written as CSV to
+ * `report` for CI to keep and diff, and compared with the CSV of a previous run when `baseline` is set. The percentile
+ * distribution of every operation is written next to the report (.hgrm, HdrHistogram plotter format).
+ *
+ * java -cp target/benchmarks.jar com.aaroncarlson.polls.benchmark.VoteLoadGenerator [option=value...] [--app.property=value...]
+ *  e.g. users=500 clients=32 seconds=60 mix=castVote:60,getPolls:20,getPollById:20 hotPolls=1 voteTally=true
+ */
+public class VoteLoadGenerator {
+
+    private static final Map<String, String> DEFAULT_OPTIONS = new LinkedHashMap<>();
+
+    static {
+        DEFAULT_OPTIONS.put("users", "200");
+        DEFAULT_OPTIONS.put("clients", "16");
+        DEFAULT_OPTIONS.put("seconds", "30");
+        DEFAULT_OPTIONS.put("warmup", "10");
+        DEFAULT_OPTIONS.put("rate", "0");
+        DEFAULT_OPTIONS.put("mix", "castVote:30,getPolls:40,getPollById:30");
+        DEFAULT_OPTIONS.put("hotPolls", "5");
+        DEFAULT_OPTIONS.put("hotPollShare", "0.8");
+        DEFAULT_OPTIONS.put("polls", "2000");
+        DEFAULT_OPTIONS.put("votes", "100000");
+        DEFAULT_OPTIONS.put("voteTally", "false");
+        DEFAULT_OPTIONS.put("report", "target/vote-load-report.csv");
+        DEFAULT_OPTIONS.put("baseline", "");
+    }
+
+    private static final String CSV_HEADER = "operation,count,errors,throughput_per_s,p50_ms,p90_ms,p99_ms,p999_ms,max_ms";
+    private static final int PAGE_SIZE = 30;
+    private static final int PAGES = 10;
+    // Highest latency recorded as is, slower requests are recorded as this value
+    private static final long MAX_LATENCY_NANOS = 60_000_000_000L;
+
+    enum Operation {
+        CAST_VOTE("castVote"), GET_POLLS("getPolls"), GET_POLL_BY_ID("getPollById");
+
+        private final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        static Operation of(String name) {
+            for (Operation operation : values()) {
+                if (operation.name.equals(name)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation " + name + ", expected castVote, getPolls or getPollById");
+        }
+    }
+
+    private final Map<String, String> options;
+    private final String[] applicationArgs;
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, Map<Integer, AtomicLong>> errors = new EnumMap<>(Operation.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private VoteLoadGenerator(Map<String, String> options, String[] applicationArgs) {
+        this.options = options;
+        this.applicationArgs = applicationArgs;
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(MAX_LATENCY_NANOS, 3));
+            errors.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULT_OPTIONS);
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                applicationArgs.add(arg);
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !DEFAULT_OPTIONS.containsKey(arg.substring(0, separator))) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected one of " + DEFAULT_OPTIONS.keySet());
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        new VoteLoadGenerator(options, applicationArgs.toArray(new String[0])).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        int pollCount = intOption("polls");
+        try (PollsServerFixture fixture = PollsServerFixture.start(pollCount, intOption("votes"),
+                Boolean.parseBoolean(options.get("voteTally")), applicationArgs)) {
+            String baseUrl = "http://localhost:" + fixture.getPort() + "/api";
+
+            long signUpStartedAt = System.nanoTime();
+            String[] accessTokens = signUp(baseUrl, intOption("users"), intOption("clients"));
+            System.out.printf("Signed up %d users in %.1f s%n", accessTokens.length, (System.nanoTime() - signUpStartedAt) / 1e9);
+
+            Map<Operation, Histogram> histograms = drive(fixture, baseUrl, accessTokens);
+            report(histograms);
+        }
+    }
+
+    // Signs up and signs in the users, `clients` at a time (BCrypt makes both slow on purpose)
+    private String[] signUp(String baseUrl, int userCount, int clients) throws InterruptedException {
+        String[] accessTokens = new String[userCount];
+        AtomicLong nextUser = new AtomicLong();
+        runClients(clients, "signup", client -> {
+            for (int user = (int) nextUser.getAndIncrement(); user < userCount; user = (int) nextUser.getAndIncrement()) {
+                String username = "load" + user;
+                String signUpRequest = "{\"name\":\"Load user " + user + "\",\"username\":\"" + username + "\",\"email\":\""
+                        + username + "@example.com\",\"password\":\"" + PollsServerFixture.PASSWORD + "\"}";
+                int status = HttpLoadClient.request("POST", baseUrl + "/auth/signup", signUpRequest, null);
+                if (status != 201) {
+                    throw new IllegalStateException("Sign up of " + username + " failed with status " + status);
+                }
+                String signInRequest = "{\"usernameOrEmail\":\"" + username + "\",\"password\":\"" + PollsServerFixture.PASSWORD + "\"}";
+                HttpLoadClient.Response response = HttpLoadClient.send("POST", baseUrl + "/auth/signin", signInRequest, null, true);
+                if (response.status != 200) {
+                    throw new IllegalStateException("Sign in of " + username + " failed with status " + response.status);
+                }
+                try {
+                    accessTokens[user] = objectMapper.readTree(response.body).get("accessToken").asText();
+                } catch (IOException exception) {
+                    throw new IllegalStateException(exception);
+                }
+            }
+        });
+        return accessTokens;
+    }
+
+    private Map<Operation, Histogram> drive(PollsServerFixture fixture, String baseUrl, String[] accessTokens)
+            throws InterruptedException {
+        int clients = intOption("clients");
+        if (accessTokens.length < clients) {
+            throw new IllegalArgumentException("users must be at least clients, every client signs in its own users");
+        }
+        Operation[] schedule = parseMix(options.get("mix"));
+        int pollCount = fixture.getPollCount();
+        int hotPolls = Math.min(intOption("hotPolls"), pollCount);
+        double hotPollShare = Double.parseDouble(options.get("hotPollShare"));
+        double rate = Double.parseDouble(options.get("rate"));
+        long intervalNanos = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+        long warmupEndsAt = System.nanoTime() + intOption("warmup") * 1_000_000_000L;
+        long endsAt = warmupEndsAt + intOption("seconds") * 1_000_000_000L;
+        AtomicLong exhaustedVotes = new AtomicLong();
+
+        runClients(clients, "client", client -> {
+            Random random = new Random(client);
+            // The users of this client and the polls each of them voted in, confined to this thread
+            List<Integer> users = new ArrayList<>();
+            for (int user = client; user < accessTokens.length; user += clients) {
+                users.add(user);
+            }
+            Map<Integer, Set<Long>> votedPollIds = new HashMap<>();
+
+            // Clients of an open loop are spread over the interval rather than all due at once
+            long dueAt = System.nanoTime() + intervalNanos * client / clients;
+            while (System.nanoTime() < endsAt) {
+                long startedAt;
+                if (intervalNanos > 0) {
+                    sleepUntil(dueAt);
+                    startedAt = dueAt;
+                    dueAt += intervalNanos;
+                } else {
+                    startedAt = System.nanoTime();
+                }
+                int user = users.get(random.nextInt(users.size()));
+                String accessToken = accessTokens[user];
+                Operation operation = schedule[random.nextInt(schedule.length)];
+
+                int status;
+                switch (operation) {
+                    case CAST_VOTE:
+                        Set<Long> userPollIds = votedPollIds.computeIfAbsent(user, key -> new HashSet<>());
+                        long pollId = pickPollToVote(random, userPollIds, pollCount, hotPolls, hotPollShare);
+                        if (pollId < 0) {
+                            exhaustedVotes.incrementAndGet();
+                            continue;
+                        }
+                        userPollIds.add(pollId);
+                        long choiceId = fixture.getFirstChoiceId(pollId) + random.nextInt(fixture.getChoiceCount(pollId));
+                        status = HttpLoadClient.request("POST", baseUrl + "/polls/" + pollId + "/votes",
+                                "{\"choiceId\":" + choiceId + "}", accessToken);
+                        break;
+                    case GET_POLLS:
+                        int page = random.nextInt(4) > 0 ? 0 : 1 + random.nextInt(PAGES - 1);
+                        status = HttpLoadClient.request("GET", baseUrl + "/polls?size=" + PAGE_SIZE + "&page=" + page,
+                                null, accessToken);
+                        break;
+                    default:
+                        status = HttpLoadClient.request("GET", baseUrl + "/polls/" + pickPoll(random, pollCount, hotPolls, hotPollShare),
+                                null, accessToken);
+                        break;
+                }
+
+                long finishedAt = System.nanoTime();
+                if (startedAt >= warmupEndsAt && finishedAt <= endsAt) {
+                    recorders.get(operation).recordValue(Math.min(finishedAt - startedAt, MAX_LATENCY_NANOS));
+                    if (status < 200 || status >= 300) {
+                        errors.get(operation).computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        if (exhaustedVotes.get() > 0) {
+            System.out.printf("Skipped %d vote(s) of users that had voted in every poll%n", exhaustedVotes.get());
+        }
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        recorders.forEach((operation, recorder) -> histograms.put(operation, recorder.getIntervalHistogram()));
+        return histograms;
+    }
+
+    // A poll the user has not voted in, or -1 when there is none left
+    private static long pickPollToVote(Random random, Set<Long> votedPollIds, int pollCount, int hotPolls, double hotPollShare) {
+        if (random.nextDouble() < hotPollShare) {
+            for (long pollId = pollCount; pollId > pollCount - hotPolls; pollId--) {
+                if (!votedPollIds.contains(pollId)) {
+                    return pollId;
+                }
+            }
+        }
+        if (votedPollIds.size() >= pollCount) {
+            return -1;
+        }
+        long pollId;
+        do {
+            pollId = 1 + random.nextInt(pollCount);
+        } while (votedPollIds.contains(pollId));
+        return pollId;
+    }
+
+    private static long pickPoll(Random random, int pollCount, int hotPolls, double hotPollShare) {
+        if (hotPolls > 0 && random.nextDouble() < hotPollShare) {
+            return pollCount - random.nextInt(hotPolls);
+        }
+        return 1 + random.nextInt(pollCount);
+    }
+
+    // Every operation appears in the schedule as many times as its weight, clients pick from it at random
+    private static Operation[] parseMix(String mix) {
+        List<Operation> schedule = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] weightedOperation = entry.trim().split(":");
+            Operation operation = Operation.of(weightedOperation[0]);
+            int weight = weightedOperation.length > 1 ? Integer.parseInt(weightedOperation[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                schedule.add(operation);
+            }
+        }
+        if (schedule.isEmpty()) {
+            throw new IllegalArgumentException("mix has no operation: " + mix);
+        }
+        return schedule.toArray(new Operation[0]);
+    }
+
+    private void report(Map<Operation, Histogram> histograms) throws IOException {
+        int seconds = intOption("seconds");
+        List<String> rows = new ArrayList<>();
+        rows.add(CSV_HEADER);
+        System.out.println();
+        System.out.printf("%-12s %9s %8s %10s %9s %9s %9s %9s %9s  %s%n",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "error statuses");
+
+        Path reportPath = Paths.get(options.get("report"));
+        Path reportDirectory = reportPath.toAbsolutePath().getParent();
+        Files.createDirectories(reportDirectory);
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            Map<Integer, Long> errorStatuses = new TreeMap<>();
+            errors.get(operation).forEach((status, count) -> errorStatuses.put(status, count.get()));
+            long errorCount = errorStatuses.values().stream().mapToLong(Long::longValue).sum();
+            long count = histogram.getTotalCount();
+            String row = String.format(Locale.ROOT, "%s,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f", operation.name, count, errorCount,
+                    count / (double) seconds, millis(histogram, 50), millis(histogram, 90), millis(histogram, 99),
+                    millis(histogram, 99.9), count == 0 ? 0 : histogram.getMaxValue() / 1e6);
+            rows.add(row);
+
+            String[] columns = row.split(",");
+            System.out.printf("%-12s %9s %8s %10s %9s %9s %9s %9s %9s  %s%n", (Object[]) append(columns, errorStatuses.isEmpty() ? "" : errorStatuses.toString()));
+
+            if (count > 0) {
+                Path distributionPath = reportDirectory.resolve(stripExtension(reportPath.getFileName().toString()) + "-" + operation.name + ".hgrm");
+                try (PrintStream printStream = new PrintStream(Files.newOutputStream(distributionPath), false, "UTF-8")) {
+                    histogram.outputPercentileDistribution(printStream, 1e6);
+                }
+            }
+        }
+        Files.write(reportPath, rows, StandardCharsets.UTF_8);
+        System.out.println();
+        System.out.println("Report written to " + reportPath.toAbsolutePath());
+
+        String baseline = options.get("baseline");
+        if (!baseline.isEmpty()) {
+            compare(Files.readAllLines(Paths.get(baseline), StandardCharsets.UTF_8), rows);
+        }
+    }
+
+    // Relative change of every metric of the report from the baseline, positive is slower (or fewer ops/s)
+    private static void compare(List<String> baselineRows, List<String> rows) {
+        if (baselineRows.isEmpty() || !baselineRows.get(0).equals(CSV_HEADER)) {
+            System.out.println("The baseline is not a report of this load generator, skipping the comparison");
+            return;
+        }
+        Map<String, String[]> baselineByOperation = new HashMap<>();
+        baselineRows.stream().skip(1).map(row -> row.split(",")).forEach(columns -> baselineByOperation.put(columns[0], columns));
+        String[] header = CSV_HEADER.split(",");
+
+        System.out.println();
+        System.out.printf("%-12s %10s %9s %9s %9s %9s %9s   (change from the baseline, positive is worse)%n",
+                "operation", "ops/s", "p50", "p90", "p99", "p99.9", "max");
+        for (String row : rows.subList(1, rows.size())) {
+            String[] columns = row.split(",");
+            String[] baselineColumns = baselineByOperation.get(columns[0]);
+            if (baselineColumns == null) {
+                continue;
+            }
+            List<String> changes = new ArrayList<>();
+            changes.add(columns[0]);
+            for (int column = 3; column < header.length; column++) {
+                double before = Double.parseDouble(baselineColumns[column]);
+                double after = Double.parseDouble(columns[column]);
+                // Less throughput is worse, more latency is worse
+                double change = before == 0 ? 0 : (column == 3 ? before - after : after - before) / before * 100;
+                changes.add(String.format(Locale.ROOT, "%+.1f%%", change));
+            }
+            System.out.printf("%-12s %10s %9s %9s %9s %9s %9s%n", changes.toArray());
+        }
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    private static String[] append(String[] columns, String column) {
+        String[] appended = new String[columns.length + 1];
+        System.arraycopy(columns, 0, appended, 0, columns.length);
+        appended[columns.length] = column;
+        return appended;
+    }
+
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long nanos = nanoTime - System.nanoTime();
+        if (nanos > 0) {
+            try {
+                Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void runClients(int clients, String name, ClientLoop loop) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<RuntimeException> failures = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    loop.run(client);
+                } catch (RuntimeException exception) {
+                    synchronized (failures) {
+                        failures.add(exception);
+                    }
+                }
+            }, name + "-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    private interface ClientLoop {
+        void run(int client);
+    }
+
+}
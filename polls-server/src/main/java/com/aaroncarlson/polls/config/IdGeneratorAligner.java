@@ -0,0 +1,53 @@
+package com.aaroncarlson.polls.config;
+
+import com.aaroncarlson.polls.util.AppConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Polls, choices and votes get their ids from the id_generators table (pooled @TableGenerator) instead of
+ * AUTO_INCREMENT columns, which allows Hibernate to batch their inserts. Databases created before the switch
+ * already contain rows, so on startup (once the schema is up to date and before any insert) every generator
+ * is moved past the highest id of its table. Generators that are already ahead are left untouched.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class IdGeneratorAligner {
+
+    private static final String[] GENERATED_TABLES = {"polls", "choices", "votes"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void alignIdGenerators() {
+        for (String table : GENERATED_TABLES) {
+            long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            if (maxId == 0) {
+                continue;
+            }
+            // The pooled optimizer hands out the ids in (next_val - allocationSize, next_val]
+            long nextValue = maxId + AppConstants.ID_ALLOCATION_SIZE;
+
+            int updated = jdbcTemplate.update(
+                    "UPDATE id_generators SET next_val = ? WHERE sequence_name = ? AND next_val < ?",
+                    nextValue, table, nextValue);
+            if (updated == 0 && jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM id_generators WHERE sequence_name = ?", Long.class, table) == 0) {
+                jdbcTemplate.update("INSERT INTO id_generators (sequence_name, next_val) VALUES (?, ?)", table, nextValue);
+                updated = 1;
+            }
+
+            if (updated > 0) {
+                log.info("Moved id generator of {} past existing id {}", table, maxId);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.aaroncarlson.polls.config;
+
+import com.aaroncarlson.polls.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per endpoint bulkhead: limits the number of requests of every endpoint ("METHOD /uri/pattern") being handled at
+ * once, to app.bulkhead.limits for the listed endpoints and app.bulkhead.defaultLimit for the others. Requests over
+ * the limit are rejected at once with 503 Service Unavailable (counted in "polls.bulkhead.rejected"), without parking
+ * the Tomcat thread, so a spike on one endpoint cannot take all the threads and JDBC connections the other endpoints
+ * need.
+ * The permit of a request whose controller returned a Callable is held until the Callable finishes, even when the
+ * request times out first, so the limit always bounds the work running against the database. It is also registered
+ * as a CallableProcessingInterceptor for that (see RequestExecutionConfig).
+ */
+@Component
+public class RequestBulkheadInterceptor implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = RequestBulkheadInterceptor.class.getName() + ".PERMIT";
+
+    @Value("${app.bulkhead.enabled}")
+    private boolean enabled;
+    @Value("${app.bulkhead.defaultLimit}")
+    private int defaultLimit;
+    @Value("#{${app.bulkhead.limits}}")
+    private Map<String, Integer> limits;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+    // Permit of the Callable running on the current thread, from preProcess to postProcess
+    private final ThreadLocal<Permit> callablePermit = new ThreadLocal<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The async dispatch of a request reuses the permit acquired by its initial dispatch
+        if (!enabled || request.getDispatcherType() != DispatcherType.REQUEST || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+
+        String endpoint = request.getMethod() + " " + request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Semaphore endpointPermits = permits.computeIfAbsent(endpoint,
+                key -> new Semaphore(limits.getOrDefault(key, defaultLimit)));
+        if (!endpointPermits.tryAcquire()) {
+            meterRegistry.counter("polls.bulkhead.rejected", "endpoint", endpoint).increment();
+            throw new ServiceUnavailableException("Too many concurrent requests, please try again later");
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, new Permit(endpointPermits));
+        return true;
+    }
+
+    // Runs on the thread of the Callable, right before it
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        Permit permit = (Permit) request.getAttribute(PERMIT_ATTRIBUTE, NativeWebRequest.SCOPE_REQUEST);
+        if (permit != null && permit.start()) {
+            callablePermit.set(permit);
+        }
+    }
+
+    // Runs on the thread of the Callable once it finished, even when the request timed out in the meantime
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        Permit permit = callablePermit.get();
+        if (permit != null) {
+            callablePermit.remove();
+            permit.finish();
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Permit permit = (Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            // Left to postProcess if the Callable of the request is still running
+            permit.releaseUnlessStarted();
+        }
+    }
+
+    /**
+     * Permit of a request, released exactly once: when the request completes if no Callable of the request started,
+     * when its Callable finishes otherwise
+     */
+    private static class Permit {
+
+        private static final int ACQUIRED = 0;
+        private static final int STARTED = 1;
+        private static final int RELEASED = 2;
+
+        private final Semaphore endpointPermits;
+        private final AtomicInteger state = new AtomicInteger(ACQUIRED);
+
+        Permit(Semaphore endpointPermits) {
+            this.endpointPermits = endpointPermits;
+        }
+
+        boolean start() {
+            return state.compareAndSet(ACQUIRED, STARTED);
+        }
+
+        void finish() {
+            if (state.compareAndSet(STARTED, RELEASED)) {
+                endpointPermits.release();
+            }
+        }
+
+        void releaseUnlessStarted() {
+            if (state.compareAndSet(ACQUIRED, RELEASED)) {
+                endpointPermits.release();
+            }
+        }
+
+    }
+
+}
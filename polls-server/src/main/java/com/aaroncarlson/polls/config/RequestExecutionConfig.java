@@ -0,0 +1,79 @@
+package com.aaroncarlson.polls.config;
+
+import com.aaroncarlson.polls.metrics.SqlStatementCountFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.Callable;
+
+/**
+ * Execution of the controller methods that block on JDBC, they return a Callable run on a bounded pool of
+ * app.requestExecution.poolSize threads, kept below the size of the JDBC connection pool. Tomcat threads are released
+ * as soon as the Callable is queued, so a slow database moment cannot exhaust them and the synchronous endpoints
+ * (signin, static assets) keep answering. A full queue is rejected with 503 Service Unavailable (see
+ * RequestRejectionHandler).
+ * The RequestBulkheadInterceptor limits the concurrent requests of every endpoint on top of that, it holds the permit
+ * of a request until its Callable finishes.
+ */
+@Configuration
+public class RequestExecutionConfig implements WebMvcConfigurer {
+
+    @Value("${app.requestExecution.poolSize}")
+    private int poolSize;
+    @Value("${app.requestExecution.queueCapacity}")
+    private int queueCapacity;
+    @Value("${app.requestExecution.timeoutMs}")
+    private long timeoutMs;
+
+    @Autowired
+    private RequestBulkheadInterceptor requestBulkheadInterceptor;
+
+    // Replaces the executor Spring Boot would auto-configure for Spring MVC async requests
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("request-");
+        // Rejected with a TaskRejectedException (AbortPolicy), answered with 503 by the RequestRejectionHandler
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(applicationTaskExecutor());
+        configurer.setDefaultTimeout(timeoutMs);
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            // SQL statements are counted per thread, hand over the ones run by the Callable to the request
+            @Override
+            public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+                SqlStatementCountFilter.collectCount(request.getNativeRequest(HttpServletRequest.class));
+            }
+
+            @Override
+            public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+                SqlStatementCountFilter.collectCount(request.getNativeRequest(HttpServletRequest.class));
+            }
+        }, requestBulkheadInterceptor);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Vote count streams stay open for minutes, they are not limited per endpoint
+        registry.addInterceptor(requestBulkheadInterceptor)
+                .excludePathPatterns("/api/polls/*/stream");
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.aaroncarlson.polls.config;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 503 Service Unavailable for the Callables rejected by the full request executor (see RequestExecutionConfig).
+ * Spring MVC only gets the rejection once the async processing of the request has started: it rethrows it on the
+ * initial dispatch, which leaves the response alone, and dispatches it again as the result of the request, which
+ * answers.
+ */
+@ControllerAdvice
+public class RequestRejectionHandler {
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public void handleRejectedExecution(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many requests in progress, please try again later");
+    }
+
+}
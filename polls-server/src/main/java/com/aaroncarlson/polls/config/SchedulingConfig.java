@@ -0,0 +1,13 @@
+package com.aaroncarlson.polls.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * @EnableScheduling turns on processing of @Scheduled methods, used by the background jobs that keep the
+ * materialized vote counters in sync with the votes table
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
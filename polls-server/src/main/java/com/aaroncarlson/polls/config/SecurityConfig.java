@@ -4,6 +4,7 @@ import com.aaroncarlson.polls.security.CustomUserDetailsService;
 import com.aaroncarlson.polls.security.JWTAuthenticationFilter;
 import com.aaroncarlson.polls.security.JwtAuthenticationEntryPoint;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -18,6 +19,12 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.header.writers.CacheControlHeadersWriter;
+import org.springframework.security.web.header.writers.DelegatingRequestMatcherHeaderWriter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 /**
  * @EnableWebSecurity - primary spring security annotation used to enable web security in a project
@@ -105,6 +112,14 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                     .and()
                 .csrf()
                     .disable()
+                .headers()
+                    // Conditional GETs send their own Cache-Control (revalidated with their ETag, see ConditionalResponse),
+                    // the headers are written before their Callable completes
+                    .cacheControl()
+                        .disable()
+                    .addHeaderWriter(new DelegatingRequestMatcherHeaderWriter(
+                            new NegatedRequestMatcher(conditionalGetRequestMatcher()), new CacheControlHeadersWriter()))
+                    .and()
                 .exceptionHandling()
                     .authenticationEntryPoint(unauthorizedHandler)
                     .and()
@@ -129,6 +144,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                             .permitAll()
                     .antMatchers(HttpMethod.GET, "/api/polls/**", "/api/users/**")
                             .permitAll()
+                    // Only served on the management port (management.server.port), scraped by Prometheus
+                    .requestMatchers(EndpointRequest.to("health", "prometheus"))
+                            .permitAll()
                     .anyRequest()
                             .authenticated();
 
@@ -136,4 +154,16 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         http.addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
     }
 
+    // Endpoints answering If-None-Match with 304 Not Modified
+    private RequestMatcher conditionalGetRequestMatcher() {
+        String get = HttpMethod.GET.name();
+        return new OrRequestMatcher(
+                new AntPathRequestMatcher("/api/polls", get),
+                new AntPathRequestMatcher("/api/polls/{pollId:[0-9]+}", get),
+                new AntPathRequestMatcher("/api/polls/batch", get),
+                new AntPathRequestMatcher("/api/users/*/polls", get),
+                new AntPathRequestMatcher("/api/users/*/votes", get),
+                new AntPathRequestMatcher("/api/user/me/feed", get));
+    }
+
 }
@@ -0,0 +1,48 @@
+package com.aaroncarlson.polls.controller;
+
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.aaroncarlson.polls.security.JwtTokenProvider;
+import com.aaroncarlson.polls.security.UserPrincipalCache;
+import com.aaroncarlson.polls.service.IdempotencyKeyCache;
+import com.aaroncarlson.polls.service.PollMetadataCache;
+import com.aaroncarlson.polls.service.PollSkeletonCache;
+import com.aaroncarlson.polls.service.UserVoteIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AdminController exposes APIs (to admins only) to:
+ *  - Get the size, hit, miss and eviction counters of the in-memory caches
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+    @Autowired
+    private PollSkeletonCache pollSkeletonCache;
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+    @Autowired
+    private UserVoteIndex userVoteIndex;
+    @Autowired
+    private IdempotencyKeyCache idempotencyKeyCache;
+
+    @GetMapping("/caches")
+    @PreAuthorize("hasRole('ADMIN')")
+    public List<CacheStatistics> getCacheStatistics() {
+        return Arrays.asList(userPrincipalCache.getStatistics(), tokenProvider.getCacheStatistics(),
+                pollSkeletonCache.getStatistics(), pollMetadataCache.getStatistics(), userVoteIndex.getStatistics(),
+                idempotencyKeyCache.getStatistics());
+    }
+
+}
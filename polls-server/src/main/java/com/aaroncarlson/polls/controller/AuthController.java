@@ -10,10 +10,16 @@ import com.aaroncarlson.polls.payload.LoginRequest;
 import com.aaroncarlson.polls.payload.SignUpRequest;
 import com.aaroncarlson.polls.repository.RoleRepository;
 import com.aaroncarlson.polls.repository.UserRepository;
+import com.aaroncarlson.polls.security.CurrentUser;
+import com.aaroncarlson.polls.security.CustomUserDetailsService;
 import com.aaroncarlson.polls.security.JwtTokenProvider;
+import com.aaroncarlson.polls.security.UserPrincipal;
+import com.aaroncarlson.polls.security.UserSecurityVersionStore;
+import com.aaroncarlson.polls.service.UserIdentityFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -43,6 +49,12 @@ public class AuthController {
     PasswordEncoder passwordEncoder;
     @Autowired
     JwtTokenProvider tokenProvider;
+    @Autowired
+    CustomUserDetailsService customUserDetailsService;
+    @Autowired
+    UserIdentityFilter userIdentityFilter;
+    @Autowired
+    UserSecurityVersionStore userSecurityVersionStore;
 
     @PostMapping("/signin")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
@@ -82,6 +94,8 @@ public class AuthController {
         user.setRoles(Collections.singleton(userRole));
 
         User result = userRepository.save(user);
+        customUserDetailsService.evictUser(result.getId());
+        userIdentityFilter.onUserRegistered(result);
 
         URI location = ServletUriComponentsBuilder
                 .fromCurrentContextPath().path("/api/users/{username}")
@@ -89,4 +103,12 @@ public class AuthController {
 
         return ResponseEntity.created(location).body(new ApiResponse(true, "User Registered Successfully!"));
     }
+
+    // Revokes every JWT issued to the current user so far (this one included), the user has to sign in again
+    @PostMapping("/signoutAll")
+    @PreAuthorize("hasRole('USER')")
+    public ApiResponse signOutEverywhere(@CurrentUser UserPrincipal currentUser) {
+        userSecurityVersionStore.bumpSecurityVersion(currentUser.getId());
+        return new ApiResponse(true, "Signed Out Everywhere!");
+    }
 }
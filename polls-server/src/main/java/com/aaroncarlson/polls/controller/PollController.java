@@ -8,23 +8,34 @@ import com.aaroncarlson.polls.repository.VoteRepository;
 import com.aaroncarlson.polls.security.CurrentUser;
 import com.aaroncarlson.polls.security.UserPrincipal;
 import com.aaroncarlson.polls.service.PollService;
+import com.aaroncarlson.polls.service.PollVoteStreamPublisher;
 import com.aaroncarlson.polls.util.AppConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.validation.Valid;
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
- * PollController exposes APIs to:
+ * PollController exposes APIs to (the ones that block on the database return a Callable, see RequestExecutionConfig):
  *  - Create a Poll
- *  - Get a paginated list of Polls stored by their creation time
- *  - Get a Poll by pollId
- *  - Vote for a Choice in a Poll
+ *  - Get a paginated list of Polls stored by their creation time (conditional GET, see ConditionalResponse)
+ *  - Get the trending Polls (most votes recently)
+ *  - Get a Poll by pollId (conditional GET)
+ *  - Stream the vote counts of a Poll (Server-Sent Events)
+ *  - Vote for a Choice in a Poll (acknowledged asynchronously when an Idempotency-Key header is sent and the
+ *    asynchronous mode is enabled)
+ *  - Import Votes in bulk (admins only)
  */
 @Slf4j
 @RestController
@@ -39,39 +50,82 @@ public class PollController {
     private UserRepository userRepository;
     @Autowired
     private PollService pollService;
+    @Autowired
+    private PollVoteStreamPublisher pollVoteStreamPublisher;
 
     @GetMapping
-    public PagedResponse<PollResponse> getPolls(@CurrentUser UserPrincipal currentUser,
-                                                @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
-                                                @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
-        return pollService.getAllPolls(currentUser, page, size);
+    public Callable<ResponseEntity<PagedResponse<PollResponse>>> getPolls(@CurrentUser UserPrincipal currentUser,
+                                                                          @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
+                                                                          @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                                          @RequestParam(value = "cursor", required = false) String cursor,
+                                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Presence of the cursor parameter (empty for the first page) switches to cursor pagination
+        if (cursor != null) {
+            return () -> pollService.getAllPolls(currentUser, cursor, size, ifNoneMatch).toResponseEntity();
+        }
+        return () -> pollService.getAllPolls(currentUser, page, size, ifNoneMatch).toResponseEntity();
     }
 
     @PostMapping
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<?> createPoll(@Valid @RequestBody PollRequest pollRequest) {
-        Poll poll = pollService.createPoll(pollRequest);
+    public Callable<ResponseEntity<?>> createPoll(@Valid @RequestBody PollRequest pollRequest) {
+        // The current request is only known by the request thread
+        UriComponentsBuilder locationBuilder = ServletUriComponentsBuilder.fromCurrentRequest().path("/{pollId}");
+
+        return () -> {
+            Poll poll = pollService.createPoll(pollRequest);
+
+            URI location = locationBuilder.buildAndExpand(poll.getId()).toUri();
+
+            return ResponseEntity.created(location)
+                    .body(new ApiResponse(true, "Poll Created Successfully"));
+        };
+    }
 
-        URI location = ServletUriComponentsBuilder
-                .fromCurrentRequest().path("/{pollId}")
-                .buildAndExpand(poll.getId()).toUri();
+    @GetMapping("/trending")
+    public Callable<List<PollResponse>> getTrendingPolls(@CurrentUser UserPrincipal currentUser,
+                                                         @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_TRENDING_SIZE) int size) {
+        return () -> pollService.getTrendingPolls(currentUser, size);
+    }
 
-        return ResponseEntity.created(location)
-                .body(new ApiResponse(true, "Poll Created Successfully"));
+    @GetMapping("/batch")
+    public Callable<ResponseEntity<List<PollResponse>>> getPollsByIds(@CurrentUser UserPrincipal currentUser,
+                                                                      @RequestParam("ids") List<Long> pollIds,
+                                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return () -> pollService.getPollsByIds(pollIds, currentUser, ifNoneMatch).toResponseEntity();
     }
 
     @GetMapping("/{pollId}")
-    public PollResponse getPollById(@CurrentUser UserPrincipal currentUser,
-                                    @PathVariable Long pollId) {
-        return pollService.getPollById(pollId, currentUser);
+    public Callable<ResponseEntity<PollResponse>> getPollById(@CurrentUser UserPrincipal currentUser,
+                                                              @PathVariable Long pollId,
+                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return () -> pollService.getPollById(pollId, currentUser, ifNoneMatch).toResponseEntity();
+    }
+
+    @GetMapping(value = "/{pollId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamVoteCounts(@PathVariable Long pollId) {
+        return pollVoteStreamPublisher.subscribe(pollId);
+    }
+
+    @PostMapping("/votes/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Callable<ApiResponse> importVotes(@Valid @RequestBody BulkVoteRequest bulkVoteRequest) {
+        return () -> {
+            int imported = pollService.importVotes(bulkVoteRequest);
+            return new ApiResponse(true, imported + " of " + bulkVoteRequest.getVotes().size() + " Votes Imported");
+        };
     }
 
     @PostMapping("/{pollId}/votes")
     @PreAuthorize("hasRole('USER')")
-    public PollResponse castVote(@CurrentUser UserPrincipal currentUser,
-                                 @PathVariable Long pollId,
-                                 @Valid @RequestBody VoteRequest voteRequest) {
-        return pollService.castVoteAndGetUpdatedPoll(pollId, voteRequest, currentUser);
+    public Callable<ResponseEntity<PollResponse>> castVote(@CurrentUser UserPrincipal currentUser,
+                                                           @PathVariable Long pollId,
+                                                           @Valid @RequestBody VoteRequest voteRequest,
+                                                           @RequestHeader(value = AppConstants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null && pollService.isAsyncVotingEnabled()) {
+            return () -> ResponseEntity.accepted().body(pollService.castVoteAsync(pollId, voteRequest, currentUser, idempotencyKey));
+        }
+        return () -> ResponseEntity.ok(pollService.castVoteAndGetUpdatedPoll(pollId, voteRequest, currentUser));
     }
 
 }
@@ -8,21 +8,30 @@ import com.aaroncarlson.polls.repository.UserRepository;
 import com.aaroncarlson.polls.repository.VoteRepository;
 import com.aaroncarlson.polls.security.CurrentUser;
 import com.aaroncarlson.polls.security.UserPrincipal;
+import com.aaroncarlson.polls.service.HomeFeed;
 import com.aaroncarlson.polls.service.PollService;
+import com.aaroncarlson.polls.service.UserIdentityFilter;
 import com.aaroncarlson.polls.util.AppConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.Callable;
+
 /**
- * UserController exposes APIs to:
+ * UserController exposes APIs to (the ones that block on the database return a Callable, see RequestExecutionConfig):
  *  - Get the currently logged in user
  *  - CHeck if a username is available for registration
  *  - Check if an email is available for registration
  *  - Get the public profile of a User
- *  - Get a paginated list of Polls created by a given User
- *  - Get a paginated list of Polls in which a given user has voted
+ *  - Get a paginated list of Polls created by a given User (conditional GET, see ConditionalResponse)
+ *  - Get a paginated list of Polls in which a given user has voted (conditional GET)
+ *  - Follow and unfollow a User
+ *  - Get the home feed of the currently logged in user: the Polls of the users they follow (conditional GET)
  */
 @Slf4j
 @RestController
@@ -37,6 +46,12 @@ public class UserController {
     private VoteRepository voteRepository;
     @Autowired
     private PollService pollService;
+    @Autowired
+    private UserIdentityFilter userIdentityFilter;
+    @Autowired
+    private HomeFeed homeFeed;
+    @Value("${app.userCounters.enabled}")
+    private boolean userCountersEnabled;
 
     @GetMapping("/user/me")
     @PreAuthorize("hasRole('USER')")
@@ -45,45 +60,91 @@ public class UserController {
         return userSummary;
     }
 
+    @GetMapping("/user/me/feed")
+    @PreAuthorize("hasRole('USER')")
+    public Callable<ResponseEntity<PagedResponse<PollResponse>>> getHomeFeed(@CurrentUser UserPrincipal currentUser,
+                                                                             @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                                             @RequestParam(value = "cursor", required = false) String cursor,
+                                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return () -> pollService.getHomeFeed(currentUser, cursor, size, ifNoneMatch).toResponseEntity();
+    }
+
     @GetMapping("/user/checkUsernameAvailability")
-    public UserIdentityAvailability checkUsernameAvailability(@RequestParam(value = "username") String username) {
-        Boolean isAvailable = !userRepository.existsByUsername(username);
-        return new UserIdentityAvailability(isAvailable);
+    public Callable<UserIdentityAvailability> checkUsernameAvailability(@RequestParam(value = "username") String username) {
+        return () -> {
+            Boolean isAvailable = userIdentityFilter.isUsernameAvailable(username);
+            return new UserIdentityAvailability(isAvailable);
+        };
     }
 
     @GetMapping("/user/checkEmailAvailability")
-    public UserIdentityAvailability checkEmailAvailability(@RequestParam(value = "eamil") String email) {
-        Boolean isAvailable = !userRepository.existsByEmail(email);
-        return new UserIdentityAvailability(isAvailable);
+    public Callable<UserIdentityAvailability> checkEmailAvailability(@RequestParam(value = "eamil") String email) {
+        return () -> {
+            Boolean isAvailable = userIdentityFilter.isEmailAvailable(email);
+            return new UserIdentityAvailability(isAvailable);
+        };
     }
 
     @GetMapping("/users/{username}")
-    public UserProfile getUserProfile(@PathVariable(value = "username") String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+    public Callable<UserProfile> getUserProfile(@PathVariable(value = "username") String username) {
+        return () -> {
+            User user = userRepository.findByUsername(username)
+                    .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
 
-        long pollCount = pollRepository.countByCreatedBy(user.getId());
-        long voteCount = voteRepository.countByUserId(user.getId());
+            // Materialized counters (see UserRepository), the live counts grow with the activity of the user
+            long pollCount = userCountersEnabled ? user.getPollCount() : pollRepository.countByCreatedBy(user.getId());
+            long voteCount = userCountersEnabled ? user.getVoteCount() : voteRepository.countByUserId(user.getId());
 
-        UserProfile userProfile = new UserProfile(user.getId(), user.getUsername(), user.getName(), user.getCreatedAt(), pollCount, voteCount);
+            UserProfile userProfile = new UserProfile(user.getId(), user.getUsername(), user.getName(), user.getCreatedAt(), pollCount, voteCount);
 
-        return userProfile;
+            return userProfile;
+        };
     }
 
     @GetMapping("/users/{username}/polls")
-    public PagedResponse<PollResponse> getPollsCreatedBy(@PathVariable(value = "username") String username,
-                                                         @CurrentUser UserPrincipal currentUser,
-                                                         @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
-                                                         @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
-        return pollService.getPollsCreatedBy(username, currentUser, page, size);
+    public Callable<ResponseEntity<PagedResponse<PollResponse>>> getPollsCreatedBy(@PathVariable(value = "username") String username,
+                                                                                   @CurrentUser UserPrincipal currentUser,
+                                                                                   @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
+                                                                                   @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (cursor != null) {
+            return () -> pollService.getPollsCreatedBy(username, currentUser, cursor, size, ifNoneMatch).toResponseEntity();
+        }
+        return () -> pollService.getPollsCreatedBy(username, currentUser, page, size, ifNoneMatch).toResponseEntity();
     }
 
     @GetMapping("/users/{username}/votes")
-    public PagedResponse<PollResponse> getPollsVotedBy(@PathVariable(value = "username") String username,
-                                                       @CurrentUser UserPrincipal currentUser,
-                                                       @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
-                                                       @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
-        return pollService.getPollsVotedBy(username, currentUser, page, size);
+    public Callable<ResponseEntity<PagedResponse<PollResponse>>> getPollsVotedBy(@PathVariable(value = "username") String username,
+                                                                                 @CurrentUser UserPrincipal currentUser,
+                                                                                 @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
+                                                                                 @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (cursor != null) {
+            return () -> pollService.getPollsVotedBy(username, currentUser, cursor, size, ifNoneMatch).toResponseEntity();
+        }
+        return () -> pollService.getPollsVotedBy(username, currentUser, page, size, ifNoneMatch).toResponseEntity();
+    }
+
+    @PostMapping("/users/{username}/followers")
+    @PreAuthorize("hasRole('USER')")
+    public Callable<ApiResponse> follow(@PathVariable(value = "username") String username,
+                                        @CurrentUser UserPrincipal currentUser) {
+        return () -> {
+            homeFeed.follow(currentUser.getId(), username);
+            return new ApiResponse(true, "Following " + username);
+        };
+    }
+
+    @DeleteMapping("/users/{username}/followers")
+    @PreAuthorize("hasRole('USER')")
+    public Callable<ApiResponse> unfollow(@PathVariable(value = "username") String username,
+                                          @CurrentUser UserPrincipal currentUser) {
+        return () -> {
+            homeFeed.unfollow(currentUser.getId(), username);
+            return new ApiResponse(true, "No longer following " + username);
+        };
     }
 
 }
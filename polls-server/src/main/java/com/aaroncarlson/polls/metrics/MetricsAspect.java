@@ -0,0 +1,62 @@
+package com.aaroncarlson.polls.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every public PollService method ("polls.service" timer) and every repository method ("polls.repository"
+ * timer, i.e. every query issued through Spring Data). Both timers are tagged with the class and method names and
+ * with the simple name of the exception thrown, if any.
+ */
+@Aspect
+@Component
+public class MetricsAspect {
+
+    private static final String REPOSITORY_PACKAGE = "com.aaroncarlson.polls.repository";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Around("execution(public * com.aaroncarlson.polls.service.PollService.*(..))")
+    public Object timePollService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("polls.service", "PollService", joinPoint);
+    }
+
+    @Around("this(org.springframework.data.repository.Repository) && execution(public * *(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("polls.repository", getRepositoryName(joinPoint.getThis()), joinPoint);
+    }
+
+    private Object time(String name, String className, ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable throwable) {
+            exception = throwable.getClass().getSimpleName();
+            throw throwable;
+        } finally {
+            sample.stop(Timer.builder(name)
+                    .tag("class", className)
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+
+    // Inherited methods (findById, saveAll...) are declared by Spring Data interfaces, name the repository instead
+    private String getRepositoryName(Object repository) {
+        for (Class<?> repositoryInterface : repository.getClass().getInterfaces()) {
+            if (repositoryInterface.getName().startsWith(REPOSITORY_PACKAGE)) {
+                return repositoryInterface.getSimpleName();
+            }
+        }
+        return repository.getClass().getSimpleName();
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.aaroncarlson.polls.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the number of SQL statements run by each request (including the ones of the security filters) in the
+ * "polls.http.sql.statements" summary, tagged by HTTP method and URI pattern. A request whose mean or max goes up is
+ * the sign of an N+1 query. Statements run by the threads of requests handled asynchronously are collected as well.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SqlStatementCountFilter extends OncePerRequestFilter {
+
+    private static final String COUNT_ATTRIBUTE = SqlStatementCountFilter.class.getName() + ".COUNT";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        request.setAttribute(COUNT_ATTRIBUTE, new AtomicInteger());
+        SqlStatementCounter.reset();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            collectCount(request);
+            if (request.isAsyncStarted()) {
+                // Handled asynchronously, the statements of the Callable are only known once it completes
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request);
+            }
+        }
+    }
+
+    /**
+     * Adds the statements counted by the current thread to the request and resets the count of the thread, called
+     * by every thread that handles a part of the request
+     */
+    public static void collectCount(HttpServletRequest request) {
+        AtomicInteger count = (AtomicInteger) request.getAttribute(COUNT_ATTRIBUTE);
+        if (count != null) {
+            count.addAndGet(SqlStatementCounter.getCount());
+        }
+        SqlStatementCounter.reset();
+    }
+
+    private void record(HttpServletRequest request) {
+        // URI pattern of the matched handler, the raw URI would create a summary per poll id
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("polls.http.sql.statements")
+                .tag("method", request.getMethod())
+                .tag("uri", uri != null ? uri.toString() : "UNKNOWN")
+                .register(meterRegistry)
+                .record(((AtomicInteger) request.getAttribute(COUNT_ATTRIBUTE)).get());
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.aaroncarlson.polls.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate StatementInspector (see hibernate.session_factory.statement_inspector) counting the SQL statements
+ * prepared by the current thread, SqlStatementCountFilter reads and resets the count around every request.
+ * Hibernate instantiates the inspector itself, hence the static state.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> STATEMENT_COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENT_COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static int getCount() {
+        return STATEMENT_COUNT.get()[0];
+    }
+
+    // Adds statements run by another thread on behalf of the current one
+    public static void add(int count) {
+        STATEMENT_COUNT.get()[0] += count;
+    }
+
+    public static void reset() {
+        STATEMENT_COUNT.get()[0] = 0;
+    }
+
+}
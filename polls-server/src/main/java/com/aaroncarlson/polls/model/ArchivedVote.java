@@ -0,0 +1,39 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * A Vote of an archived Poll (see PollArchiver), moved out of the votes table once the results of the Poll are frozen.
+ * It keeps the id and creation time of the Vote, archived votes are only read for the history of their user (the
+ * polls a user voted in and the choice they picked), hence plain id columns and the user indexes only.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "archived_votes", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {
+                "user_id",
+                "poll_id"
+        })
+}, indexes = {
+        // Keyset pagination of the polls a user has voted in
+        @Index(name = "idx_archived_votes_user_id_created_at_id", columnList = "user_id, createdAt, id")
+})
+public class ArchivedVote {
+
+    @Id
+    private Long id;
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+    @Column(name = "poll_id", nullable = false)
+    private Long pollId;
+    @Column(name = "choice_id", nullable = false)
+    private Long choiceId;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+}
@@ -1,5 +1,6 @@
 package com.aaroncarlson.polls.model;
 
+import com.aaroncarlson.polls.util.AppConstants;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -15,7 +16,9 @@ import java.util.Objects;
 public class Choice {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "choice_id_generator")
+    @TableGenerator(name = "choice_id_generator", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "choices", allocationSize = AppConstants.ID_ALLOCATION_SIZE)
     private Long id;
     @NotBlank
     @Size(max = 40)
@@ -23,6 +26,9 @@ public class Choice {
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "poll_id", nullable = false)
     private Poll poll;
+    // Materialized number of votes for this choice, incremented in the same transaction that saves a Vote
+    @Column(nullable = false)
+    private long voteCount;
 
     public Choice() {
 
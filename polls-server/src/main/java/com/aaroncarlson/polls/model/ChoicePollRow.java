@@ -0,0 +1,26 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * ChoicePollRow is used by ChoiceRepository to read the Poll a Choice belongs to, and whether that Poll is archived,
+ * without loading any entity (used to check imported votes)
+ */
+@Getter
+@Setter
+public class ChoicePollRow {
+
+    private Long choiceId;
+    private Long pollId;
+    private Instant pollArchivedAt;
+
+    public ChoicePollRow(Long choiceId, Long pollId, Instant pollArchivedAt) {
+        this.choiceId = choiceId;
+        this.pollId = pollId;
+        this.pollArchivedAt = pollArchivedAt;
+    }
+
+}
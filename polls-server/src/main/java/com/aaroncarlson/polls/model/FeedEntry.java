@@ -0,0 +1,24 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * FeedEntry is used by FeedItemRepository and PollRepository to page through a home feed, the creation time and id
+ * of the Poll are the keyset of the pagination
+ */
+@Getter
+@Setter
+public class FeedEntry {
+
+    private Long pollId;
+    private Instant createdAt;
+
+    public FeedEntry(Long pollId, Instant createdAt) {
+        this.pollId = pollId;
+        this.createdAt = createdAt;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * A Poll in the home feed of a User, written when the Poll is created (fan-out on write, see HomeFeed). It carries
+ * the creation time of the Poll, the keyset of the feed pagination, and its creator, whose polls are removed from the
+ * feed when the user unfollows them. Plain id columns, like the votes of archived polls.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "feed_items", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {
+                "user_id",
+                "poll_id"
+        })
+}, indexes = {
+        // Keyset pagination of the feed of a user
+        @Index(name = "idx_feed_items_user_id_created_at_poll_id", columnList = "user_id, createdAt, poll_id"),
+        @Index(name = "idx_feed_items_user_id_creator_id", columnList = "user_id, creator_id")
+})
+public class FeedItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    @Column(name = "poll_id", nullable = false)
+    private Long pollId;
+    @Column(name = "creator_id", nullable = false)
+    private Long creatorId;
+    // Creation time of the Poll
+    @Column(nullable = false)
+    private Instant createdAt;
+
+}
@@ -0,0 +1,47 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * A User (follower) following another User (followee): the polls created by the followee show up in the home feed
+ * of the follower (see HomeFeed). Plain id columns, follows are only read by id.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "follows", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {
+                "follower_id",
+                "followee_id"
+        })
+}, indexes = {
+        // Fan-out of a new Poll to the followers of its creator
+        @Index(name = "idx_follows_followee_id_follower_id", columnList = "followee_id, follower_id")
+})
+public class Follow {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "follower_id", nullable = false)
+    private Long followerId;
+    @Column(name = "followee_id", nullable = false)
+    private Long followeeId;
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public Follow() {
+
+    }
+
+    public Follow(Long followerId, Long followeeId, Instant createdAt) {
+        this.followerId = followerId;
+        this.followeeId = followeeId;
+        this.createdAt = createdAt;
+    }
+
+}
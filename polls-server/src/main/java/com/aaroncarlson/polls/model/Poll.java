@@ -1,6 +1,7 @@
 package com.aaroncarlson.polls.model;
 
 import com.aaroncarlson.polls.model.audit.UserDateAudit;
+import com.aaroncarlson.polls.util.AppConstants;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.BatchSize;
@@ -18,11 +19,19 @@ import java.util.List;
 @Getter
 @Setter
 @Entity
-@Table(name =  "polls")
+@Table(name =  "polls", indexes = {
+        // Keyset pagination of the poll feeds
+        @Index(name = "idx_polls_created_at_id", columnList = "createdAt, id"),
+        @Index(name = "idx_polls_created_by_created_at_id", columnList = "createdBy, createdAt, id"),
+        // Expired polls waiting to be archived
+        @Index(name = "idx_polls_archived_at_expiration_date_time", columnList = "archivedAt, expirationDateTime")
+})
 public class Poll extends UserDateAudit {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "poll_id_generator")
+    @TableGenerator(name = "poll_id_generator", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "polls", allocationSize = AppConstants.ID_ALLOCATION_SIZE)
     private Long id;
     @NotBlank
     @Size(max = 140)
@@ -39,6 +48,8 @@ public class Poll extends UserDateAudit {
     private List<Choice> choices = new ArrayList<>();
     @NotNull
     private Instant expirationDateTime;
+    // Set once the Poll is archived (see PollArchiver): its votes are moved to archived_votes, its results are final
+    private Instant archivedAt;
 
     public void addChoice(Choice choice) {
         choices.add(choice);
@@ -0,0 +1,28 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * PollChoiceIdRow is used by PollRepository to read the PollMetadata of a Poll, one row per Choice, without loading any
+ * entity nor reading the texts of the Poll
+ */
+@Getter
+@Setter
+public class PollChoiceIdRow {
+
+    private Long pollId;
+    private Instant expirationDateTime;
+    private Long creatorId;
+    private Long choiceId;
+
+    public PollChoiceIdRow(Long pollId, Instant expirationDateTime, Long creatorId, Long choiceId) {
+        this.pollId = pollId;
+        this.expirationDateTime = expirationDateTime;
+        this.creatorId = creatorId;
+        this.choiceId = choiceId;
+    }
+
+}
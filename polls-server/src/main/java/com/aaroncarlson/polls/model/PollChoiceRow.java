@@ -0,0 +1,44 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * PollChoiceRow is used by PollRepository to read a Poll, one of its Choices and the Poll creator in a single flat row,
+ * so that PollResponses are assembled without loading any entity
+ */
+@Getter
+@Setter
+public class PollChoiceRow {
+
+    private Long pollId;
+    private String question;
+    private Instant createdAt;
+    private Instant expirationDateTime;
+    private Instant archivedAt;
+    private Long creatorId;
+    private String creatorUsername;
+    private String creatorName;
+    private Long choiceId;
+    private String choiceText;
+    private Long choiceVoteCount;
+
+    public PollChoiceRow(Long pollId, String question, Instant createdAt, Instant expirationDateTime, Instant archivedAt,
+                         Long creatorId, String creatorUsername, String creatorName,
+                         Long choiceId, String choiceText, Long choiceVoteCount) {
+        this.pollId = pollId;
+        this.question = question;
+        this.createdAt = createdAt;
+        this.expirationDateTime = expirationDateTime;
+        this.archivedAt = archivedAt;
+        this.creatorId = creatorId;
+        this.creatorUsername = creatorUsername;
+        this.creatorName = creatorName;
+        this.choiceId = choiceId;
+        this.choiceText = choiceText;
+        this.choiceVoteCount = choiceVoteCount;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * What validating a vote needs to know about a Poll (expiration, choices and creator), in primitive fields so that a
+ * cache of them stays small. Cached by PollMetadataCache, like the Poll it is built from it never changes.
+ */
+@Getter
+public class PollMetadata {
+
+    private final long id;
+    private final long expiresAtMillis;
+    // Sorted
+    private final long[] choiceIds;
+    private final long creatorId;
+
+    public PollMetadata(long id, long expiresAtMillis, long[] choiceIds, long creatorId) {
+        this.id = id;
+        this.expiresAtMillis = expiresAtMillis;
+        this.choiceIds = choiceIds.clone();
+        Arrays.sort(this.choiceIds);
+        this.creatorId = creatorId;
+    }
+
+    public boolean isExpiredAt(long nowMillis) {
+        return expiresAtMillis < nowMillis;
+    }
+
+    public boolean hasChoice(long choiceId) {
+        return Arrays.binarySearch(choiceIds, choiceId) >= 0;
+    }
+
+    public List<Long> getChoiceIdList() {
+        return Arrays.stream(choiceIds).boxed().collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.aaroncarlson.polls.model;
+
+import com.aaroncarlson.polls.payload.UserSummary;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a Poll that never change once it is created (question, choices, creator and expiration), cached by
+ * PollSkeletonCache. A PollResponse is a skeleton plus the live vote counts and the choice selected by the caller.
+ * The skeleton of an archived Poll carries its final vote counts as well (keyed by choice id), they never change either.
+ */
+@Getter
+public class PollSkeleton {
+
+    private final Long id;
+    private final String question;
+    private final List<ChoiceSkeleton> choices;
+    private final UserSummary createdBy;
+    private final Instant creationDateTime;
+    private final Instant expirationDateTime;
+    // Null until the Poll is archived
+    private final Map<Long, Long> frozenVoteCounts;
+
+    public PollSkeleton(Long id, String question, List<ChoiceSkeleton> choices, UserSummary createdBy,
+                        Instant creationDateTime, Instant expirationDateTime, Map<Long, Long> frozenVoteCounts) {
+        this.id = id;
+        this.question = question;
+        this.choices = choices;
+        this.createdBy = createdBy;
+        this.creationDateTime = creationDateTime;
+        this.expirationDateTime = expirationDateTime;
+        this.frozenVoteCounts = frozenVoteCounts;
+    }
+
+    public boolean isArchived() {
+        return frozenVoteCounts != null;
+    }
+
+    @Getter
+    public static class ChoiceSkeleton {
+
+        private final Long id;
+        private final String text;
+
+        public ChoiceSkeleton(Long id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * PollVoteBucket is used by VoteRepository to return the number of votes cast in a Poll during one minute (or one
+ * hour) without loading Vote entities. Dates are in UTC, the time zone of the application and of the database session.
+ */
+@Getter
+@Setter
+public class PollVoteBucket {
+
+    private Long pollId;
+    private LocalDateTime start;
+    private Long voteCount;
+
+    public PollVoteBucket(Long pollId, Integer year, Integer month, Integer day, Integer hour, Long voteCount) {
+        this(pollId, year, month, day, hour, 0, voteCount);
+    }
+
+    public PollVoteBucket(Long pollId, Integer year, Integer month, Integer day, Integer hour, Integer minute, Long voteCount) {
+        this.pollId = pollId;
+        this.start = LocalDateTime.of(year, month, day, hour, minute);
+        this.voteCount = voteCount;
+    }
+
+    public int getEpochMinute() {
+        return (int) (start.toEpochSecond(ZoneOffset.UTC) / 60);
+    }
+
+    public int getEpochHour() {
+        return getEpochMinute() / 60;
+    }
+
+}
@@ -47,6 +47,21 @@ public class User extends DateAudit {
             joinColumns = @JoinColumn(name = "user_id"),
             inverseJoinColumns = @JoinColumn(name = "role_id"))
     private Set<Role> roles = new HashSet<>();
+    // Incremented whenever the roles or credentials of the user change, JWTs carrying an older version are rejected
+    @Column(nullable = false)
+    private long securityVersion;
+    // Materialized counters of the polls created and the votes cast by the user, shown on the user profile
+    @Column(nullable = false)
+    private long pollCount;
+    @Column(nullable = false)
+    private long voteCount;
+    // Materialized counter of the followers of the user
+    @Column(nullable = false)
+    private long followerCount;
+    // Set for good once the followers of the user exceed app.feed.fanOutMaxFollowers, the polls created from then on are
+    // no longer copied to the feeds of the followers but read from the polls table with the feed (see HomeFeed)
+    @Column(nullable = false)
+    private boolean fanOutOnRead;
 
     public User() {
 
@@ -0,0 +1,23 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * UserIdentity is used by UserRepository to read the username and email of users without loading User entities
+ */
+@Getter
+@Setter
+public class UserIdentity {
+
+    private Long id;
+    private String username;
+    private String email;
+
+    public UserIdentity(Long id, String username, String email) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.aaroncarlson.polls.model;
 
 import com.aaroncarlson.polls.model.audit.DateAudit;
+import com.aaroncarlson.polls.util.AppConstants;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -14,11 +15,18 @@ import javax.persistence.*;
                 "poll_id",
                 "user_id"
         })
+}, indexes = {
+        // Keyset pagination of the polls a user has voted in
+        @Index(name = "idx_votes_user_id_created_at_id", columnList = "user_id, createdAt, id"),
+        // Recent votes per poll, read on startup to rebuild the trending polls
+        @Index(name = "idx_votes_created_at_poll_id", columnList = "createdAt, poll_id")
 })
 public class Vote extends DateAudit {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "vote_id_generator")
+    @TableGenerator(name = "vote_id_generator", table = "id_generators", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "votes", allocationSize = AppConstants.ID_ALLOCATION_SIZE)
     private Long id;
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "poll_id", nullable = false)
@@ -0,0 +1,21 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * VotedChoice is used by VoteRepository to return the choice a user picked in each Poll without loading Vote entities
+ */
+@Getter
+@Setter
+public class VotedChoice {
+
+    private Long pollId;
+    private Long choiceId;
+
+    public VotedChoice(Long pollId, Long choiceId) {
+        this.pollId = pollId;
+        this.choiceId = choiceId;
+    }
+
+}
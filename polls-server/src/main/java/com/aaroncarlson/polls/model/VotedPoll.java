@@ -0,0 +1,26 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * VotedPoll is used by VoteRepository to page through the polls a user voted in (live and archived votes), the id and
+ * creation time of the Vote are the keyset of the pagination
+ */
+@Getter
+@Setter
+public class VotedPoll {
+
+    private Long voteId;
+    private Instant createdAt;
+    private Long pollId;
+
+    public VotedPoll(Long voteId, Instant createdAt, Long pollId) {
+        this.voteId = voteId;
+        this.createdAt = createdAt;
+        this.pollId = pollId;
+    }
+
+}
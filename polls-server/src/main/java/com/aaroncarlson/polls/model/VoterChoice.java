@@ -0,0 +1,21 @@
+package com.aaroncarlson.polls.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * VoterChoice is used by VoteRepository to return the choice each user picked in a Poll without loading Vote entities
+ */
+@Getter
+@Setter
+public class VoterChoice {
+
+    private Long userId;
+    private Long choiceId;
+
+    public VoterChoice(Long userId, Long choiceId) {
+        this.userId = userId;
+        this.choiceId = choiceId;
+    }
+
+}
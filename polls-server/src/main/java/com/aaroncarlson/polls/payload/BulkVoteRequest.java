@@ -0,0 +1,33 @@
+package com.aaroncarlson.polls.payload;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@Setter
+public class BulkVoteRequest {
+
+    @NotNull
+    @Size(min = 1, max = 10000)
+    @Valid
+    private List<BulkVote> votes;
+
+    @Getter
+    @Setter
+    public static class BulkVote {
+
+        @NotNull
+        private Long pollId;
+        @NotNull
+        private Long choiceId;
+        @NotNull
+        private Long userId;
+
+    }
+
+}
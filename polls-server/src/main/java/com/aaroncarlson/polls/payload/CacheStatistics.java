@@ -0,0 +1,24 @@
+package com.aaroncarlson.polls.payload;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CacheStatistics {
+
+    private String name;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CacheStatistics(String name, long size, long hits, long misses, long evictions) {
+        this.name = name;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.aaroncarlson.polls.payload;
+
+import lombok.Getter;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response of a conditional GET: its ETag, and its body unless the client already has it (If-None-Match matched the
+ * ETag, the body was not assembled)
+ */
+@Getter
+public class ConditionalResponse<T> {
+
+    private final String eTag;
+    private final T body;
+    // How long clients may use the response without revalidating it, null for responses that change with every vote
+    private final Duration maxAge;
+
+    private ConditionalResponse(String eTag, T body, Duration maxAge) {
+        this.eTag = eTag;
+        this.body = body;
+        this.maxAge = maxAge;
+    }
+
+    public static <T> ConditionalResponse<T> of(String eTag, T body) {
+        return new ConditionalResponse<>(eTag, body, null);
+    }
+
+    public static <T> ConditionalResponse<T> notModified(String eTag) {
+        return new ConditionalResponse<>(eTag, null, null);
+    }
+
+    public ConditionalResponse<T> withMaxAge(Duration maxAge) {
+        return new ConditionalResponse<>(eTag, body, maxAge);
+    }
+
+    public boolean isNotModified() {
+        return body == null;
+    }
+
+    /**
+     * Whether the given If-None-Match header value (list of ETags or *) matches the given ETag, using the weak
+     * comparison of RFC 7232
+     */
+    public static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 200 with the body or 304 Not Modified, both with the ETag. Responses depend on the current user (selectedChoice)
+     * and change with every vote: private, revalidated on every use unless a max age is set.
+     */
+    public ResponseEntity<T> toResponseEntity() {
+        CacheControl cacheControl = maxAge != null
+                ? CacheControl.maxAge(maxAge.getSeconds(), TimeUnit.SECONDS).cachePrivate()
+                : CacheControl.noCache().cachePrivate();
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(isNotModified() ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .cacheControl(cacheControl);
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        return builder.body(body);
+    }
+
+}
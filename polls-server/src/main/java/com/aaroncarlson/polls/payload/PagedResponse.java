@@ -1,5 +1,6 @@
 package com.aaroncarlson.polls.payload;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,9 +13,15 @@ public class PagedResponse<T> {
     private List<T> content;
     private int page;
     private int size;
+    // Not computed in cursor mode
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Long totalElements;
-    private int totalPages;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer totalPages;
     private Boolean last;
+    // Only set in cursor mode, when there is a next page
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 
     public PagedResponse() {
 
@@ -29,4 +36,11 @@ public class PagedResponse<T> {
         this.last = last;
     }
 
+    public PagedResponse(List<T> content, int size, Boolean last, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.last = last;
+        this.nextCursor = nextCursor;
+    }
+
 }
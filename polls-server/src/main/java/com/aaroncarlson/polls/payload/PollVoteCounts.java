@@ -0,0 +1,23 @@
+package com.aaroncarlson.polls.payload;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * Vote counts pushed to the clients streaming a Poll, keyed by choice id
+ */
+@Getter
+@Setter
+public class PollVoteCounts {
+
+    private Long pollId;
+    private Map<Long, Long> voteCounts;
+
+    public PollVoteCounts(Long pollId, Map<Long, Long> voteCounts) {
+        this.pollId = pollId;
+        this.voteCounts = voteCounts;
+    }
+
+}
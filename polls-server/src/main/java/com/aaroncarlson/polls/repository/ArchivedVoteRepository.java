@@ -0,0 +1,23 @@
+package com.aaroncarlson.polls.repository;
+
+import com.aaroncarlson.polls.model.ArchivedVote;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Votes of the archived polls (see PollArchiver), read together with the live votes by the user history queries of
+ * VoteRepository
+ */
+@Repository
+public interface ArchivedVoteRepository extends JpaRepository<ArchivedVote, Long> {
+
+    // Copies the votes of the Poll as they are, PollArchiver deletes them from the votes table in the same transaction
+    @Modifying
+    @Query(value = "INSERT INTO archived_votes (id, created_at, poll_id, choice_id, user_id) " +
+            "SELECT v.id, v.created_at, v.poll_id, v.choice_id, v.user_id FROM votes v WHERE v.poll_id = :pollId", nativeQuery = true)
+    int copyVotesOfPoll(@Param("pollId") Long pollId);
+
+}
@@ -0,0 +1,48 @@
+package com.aaroncarlson.polls.repository;
+
+import com.aaroncarlson.polls.model.Choice;
+import com.aaroncarlson.polls.model.ChoicePollRow;
+import com.aaroncarlson.polls.model.ChoiceVoteCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Every Choice carries a materialized voteCount so that reading the results of a Poll does not depend on
+ * the number of votes it has received:
+ *  - incrementVoteCount is an atomic UPDATE, executed in the same transaction that saves the Vote
+ *  - recomputeVoteCounts rebuilds the counters from the votes table and is used by the VoteCountReconciler
+ *  - the counters of the archived polls are their final results (their votes moved to archived_votes), recomputed one
+ *    last time when the Poll is archived (recomputeVoteCountsOfPoll) and left alone by recomputeVoteCounts
+ */
+@Repository
+public interface ChoiceRepository extends JpaRepository<Choice, Long> {
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Choice c SET c.voteCount = c.voteCount + :delta WHERE c.id = :choiceId")
+    int incrementVoteCount(@Param("choiceId") Long choiceId, @Param("delta") long delta);
+    @Query("SELECT NEW com.aaroncarlson.polls.model.ChoiceVoteCount(c.id, c.voteCount) FROM Choice c WHERE c.poll.id = :pollId")
+    List<ChoiceVoteCount> findVoteCountsByPollId(@Param("pollId") Long pollId);
+    @Query("SELECT NEW com.aaroncarlson.polls.model.ChoiceVoteCount(c.id, c.voteCount) FROM Choice c WHERE c.poll.id IN :pollIds")
+    List<ChoiceVoteCount> findVoteCountsByPollIdIn(@Param("pollIds") List<Long> pollIds);
+    @Query("SELECT NEW com.aaroncarlson.polls.model.ChoicePollRow(c.id, p.id, p.archivedAt) FROM Choice c JOIN c.poll p " +
+            "WHERE c.id IN :choiceIds")
+    List<ChoicePollRow> findChoicePollRowsByIdIn(@Param("choiceIds") List<Long> choiceIds);
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE choices c SET c.vote_count = (SELECT COUNT(v.id) FROM votes v WHERE v.choice_id = c.id) " +
+            "WHERE c.vote_count <> (SELECT COUNT(v.id) FROM votes v WHERE v.choice_id = c.id) " +
+            "AND c.poll_id IN (SELECT p.id FROM polls p WHERE p.archived_at IS NULL)", nativeQuery = true)
+    int recomputeVoteCounts();
+    @Modifying
+    @Query(value = "UPDATE choices c SET c.vote_count = (SELECT COUNT(v.id) FROM votes v WHERE v.choice_id = c.id) " +
+            "WHERE c.poll_id = :pollId", nativeQuery = true)
+    int recomputeVoteCountsOfPoll(@Param("pollId") Long pollId);
+
+}
@@ -0,0 +1,55 @@
+package com.aaroncarlson.polls.repository;
+
+import com.aaroncarlson.polls.model.FeedEntry;
+import com.aaroncarlson.polls.model.FeedItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The home feeds of the users (see HomeFeed), one row per Poll and follower of its creator
+ */
+@Repository
+public interface FeedItemRepository extends JpaRepository<FeedItem, Long> {
+
+    // Fan-out on write: adds the Poll to the feed of every follower of its creator in one statement
+    @Modifying
+    @Query(value = "INSERT INTO feed_items (user_id, poll_id, creator_id, created_at) " +
+            "SELECT f.follower_id, :pollId, :creatorId, :createdAt FROM follows f WHERE f.followee_id = :creatorId", nativeQuery = true)
+    int fanOut(@Param("pollId") Long pollId, @Param("creatorId") Long creatorId, @Param("createdAt") Instant createdAt);
+    // Adds the latest polls of a newly followed creator to the feed of the user, the ones already there are skipped
+    @Modifying
+    @Query(value = "INSERT INTO feed_items (user_id, poll_id, creator_id, created_at) " +
+            "SELECT :userId, p.id, p.created_by, p.created_at FROM polls p WHERE p.created_by = :creatorId " +
+            "AND NOT EXISTS (SELECT 1 FROM feed_items i WHERE i.user_id = :userId AND i.poll_id = p.id) " +
+            "ORDER BY p.created_at DESC, p.id DESC LIMIT :limit", nativeQuery = true)
+    int backfill(@Param("userId") Long userId, @Param("creatorId") Long creatorId, @Param("limit") int limit);
+    @Modifying
+    @Query("DELETE FROM FeedItem i WHERE i.userId = :userId AND i.creatorId = :creatorId")
+    int deleteByUserIdAndCreatorId(@Param("userId") Long userId, @Param("creatorId") Long creatorId);
+
+    // Keyset pagination, newest polls first
+    @Query("SELECT NEW com.aaroncarlson.polls.model.FeedEntry(i.pollId, i.createdAt) FROM FeedItem i " +
+            "WHERE i.userId = :userId ORDER BY i.createdAt DESC, i.pollId DESC")
+    List<FeedEntry> findFeedEntries(@Param("userId") Long userId, Pageable pageable);
+    @Query("SELECT NEW com.aaroncarlson.polls.model.FeedEntry(i.pollId, i.createdAt) FROM FeedItem i " +
+            "WHERE i.userId = :userId AND (i.createdAt < :createdAt OR (i.createdAt = :createdAt AND i.pollId < :pollId)) " +
+            "ORDER BY i.createdAt DESC, i.pollId DESC")
+    List<FeedEntry> findFeedEntriesBefore(@Param("userId") Long userId, @Param("createdAt") Instant createdAt,
+                                          @Param("pollId") Long pollId, Pageable pageable);
+
+    // Trimming of the feeds grown past app.feed.maxItems
+    @Query("SELECT i.userId FROM FeedItem i GROUP BY i.userId HAVING COUNT(i) > :maxItems")
+    List<Long> findUserIdsWithMoreItemsThan(@Param("maxItems") long maxItems, Pageable pageable);
+    @Modifying
+    @Query("DELETE FROM FeedItem i WHERE i.userId = :userId " +
+            "AND (i.createdAt < :createdAt OR (i.createdAt = :createdAt AND i.pollId <= :pollId))")
+    int deleteByUserIdUpTo(@Param("userId") Long userId, @Param("createdAt") Instant createdAt, @Param("pollId") Long pollId);
+
+}
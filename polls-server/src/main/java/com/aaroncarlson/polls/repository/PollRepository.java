@@ -1,12 +1,20 @@
 package com.aaroncarlson.polls.repository;
 
+import com.aaroncarlson.polls.model.FeedEntry;
 import com.aaroncarlson.polls.model.Poll;
+import com.aaroncarlson.polls.model.PollChoiceIdRow;
+import com.aaroncarlson.polls.model.PollChoiceRow;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,9 +22,59 @@ import java.util.Optional;
 public interface PollRepository extends JpaRepository<Poll, Long> {
 
     Optional<Poll> findById(Long pollId);
-    Page<Poll> findByCreatedBy(Long userId, Pageable pageable);
     Long countByCreatedBy(Long userId);
-    List<Poll> findByIdIn(List<Long> pollIds);
-    List<Poll> findByIdIn(List<Long> pollIds, Sort sort);
+    // The newest polls that have not expired, their vote tallies are rebuilt on startup
+    @Query("SELECT p.id FROM Poll p WHERE p.expirationDateTime > :now ORDER BY p.createdAt DESC, p.id DESC")
+    List<Long> findActivePollIds(@Param("now") Instant now, Pageable pageable);
+
+    // Polls to archive, the longest expired first
+    @Query("SELECT p.id FROM Poll p WHERE p.archivedAt IS NULL AND p.expirationDateTime < :expiredBefore " +
+            "ORDER BY p.expirationDateTime")
+    List<Long> findPollIdsToArchive(@Param("expiredBefore") Instant expiredBefore, Pageable pageable);
+    // Returns 0 when the Poll is already archived (by another node)
+    @Modifying
+    @Query("UPDATE Poll p SET p.archivedAt = :archivedAt WHERE p.id = :pollId AND p.archivedAt IS NULL")
+    int markArchived(@Param("pollId") Long pollId, @Param("archivedAt") Instant archivedAt);
+
+    // Ids of a page of polls, the polls themselves are read with findPollChoiceRowsByIdIn
+    @Query("SELECT p.id FROM Poll p")
+    Page<Long> findPollIds(Pageable pageable);
+    @Query("SELECT p.id FROM Poll p WHERE p.createdBy = :userId")
+    Page<Long> findPollIdsByCreatedBy(@Param("userId") Long userId, Pageable pageable);
+
+    // Keyset pagination, the Pageable is expected to sort by createdAt DESC, id DESC
+    @Query("SELECT p.id FROM Poll p")
+    Slice<Long> findPollIdSlice(Pageable pageable);
+    @Query("SELECT p.id FROM Poll p WHERE p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)")
+    Slice<Long> findPollIdsBefore(@Param("createdAt") Instant createdAt, @Param("id") Long id, Pageable pageable);
+    @Query("SELECT p.id FROM Poll p WHERE p.createdBy = :userId")
+    Slice<Long> findPollIdSliceByCreatedBy(@Param("userId") Long userId, Pageable pageable);
+    @Query("SELECT p.id FROM Poll p WHERE p.createdBy = :userId AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id))")
+    Slice<Long> findPollIdsByCreatedByBefore(@Param("userId") Long userId, @Param("createdAt") Instant createdAt,
+                                             @Param("id") Long id, Pageable pageable);
+
+    // Polls of the creators whose polls are read with the home feed rather than copied to it (see HomeFeed)
+    @Query("SELECT NEW com.aaroncarlson.polls.model.FeedEntry(p.id, p.createdAt) FROM Poll p " +
+            "WHERE p.createdBy IN :creatorIds ORDER BY p.createdAt DESC, p.id DESC")
+    List<FeedEntry> findFeedEntriesByCreatedByIn(@Param("creatorIds") Collection<Long> creatorIds, Pageable pageable);
+    @Query("SELECT NEW com.aaroncarlson.polls.model.FeedEntry(p.id, p.createdAt) FROM Poll p " +
+            "WHERE p.createdBy IN :creatorIds AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    List<FeedEntry> findFeedEntriesByCreatedByInBefore(@Param("creatorIds") Collection<Long> creatorIds,
+                                                      @Param("createdAt") Instant createdAt, @Param("id") Long id,
+                                                      Pageable pageable);
+
+    /**
+     * Reads the given polls with their choices (and vote counts) and creators in one statement, newest polls first
+     */
+    @Query("SELECT NEW com.aaroncarlson.polls.model.PollChoiceRow(p.id, p.question, p.createdAt, p.expirationDateTime, " +
+            "p.archivedAt, u.id, u.username, u.name, c.id, c.text, c.voteCount) " +
+            "FROM Poll p JOIN p.choices c JOIN User u ON u.id = p.createdBy " +
+            "WHERE p.id IN :pollIds ORDER BY p.createdAt DESC, p.id DESC, c.id")
+    List<PollChoiceRow> findPollChoiceRowsByIdIn(@Param("pollIds") List<Long> pollIds);
+    // The PollMetadata of a Poll, used to validate votes
+    @Query("SELECT NEW com.aaroncarlson.polls.model.PollChoiceIdRow(p.id, p.expirationDateTime, p.createdBy, c.id) " +
+            "FROM Poll p JOIN p.choices c WHERE p.id = :pollId")
+    List<PollChoiceIdRow> findPollChoiceIdRowsById(@Param("pollId") Long pollId);
 
 }
@@ -1,20 +1,81 @@
 package com.aaroncarlson.polls.repository;
 
 import com.aaroncarlson.polls.model.User;
+import com.aaroncarlson.polls.model.UserIdentity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Every User carries materialized pollCount and voteCount counters so that the user profile does not depend on the
+ * activity of the user:
+ *  - incrementPollCount and incrementVoteCount are atomic UPDATEs, executed in the same transaction that saves the
+ *    Poll or the Vote
+ *  - recomputeActivityCounts rebuilds the counters from the polls, votes and archived_votes tables and is used by the
+ *    VoteCountReconciler
+ */
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
     Optional<User> findByUsernameOrEmail(String username, String email);
-    List<User> findByIdIn(List<Long> userIds);
+    // Used to build a UserPrincipal, roles are fetched in the same query
+    @EntityGraph(attributePaths = "roles")
+    Optional<User> findWithRolesById(Long id);
+    @EntityGraph(attributePaths = "roles")
+    Optional<User> findWithRolesByUsernameOrEmail(String username, String email);
     Optional<User> findByUsername(String username);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
+    // Keyset pagination over every user, by id
+    @Query("SELECT NEW com.aaroncarlson.polls.model.UserIdentity(u.id, u.username, u.email) FROM User u " +
+            "WHERE u.id > :afterId ORDER BY u.id")
+    List<UserIdentity> findIdentitiesAfter(@Param("afterId") Long afterId, Pageable pageable);
+    @Query("SELECT u.securityVersion FROM User u WHERE u.id = :userId")
+    Optional<Long> findSecurityVersionById(@Param("userId") Long userId);
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.securityVersion = u.securityVersion + 1 WHERE u.id = :userId")
+    int incrementSecurityVersion(@Param("userId") Long userId);
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.pollCount = u.pollCount + :delta WHERE u.id = :userId")
+    int incrementPollCount(@Param("userId") Long userId, @Param("delta") long delta);
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.voteCount = u.voteCount + :delta WHERE u.id = :userId")
+    int incrementVoteCount(@Param("userId") Long userId, @Param("delta") long delta);
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.followerCount = u.followerCount + :delta WHERE u.id = :userId")
+    int incrementFollowerCount(@Param("userId") Long userId, @Param("delta") long delta);
+    // Returns 0 unless the user has just been switched to fan-out on read
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.fanOutOnRead = true WHERE u.id = :userId AND u.fanOutOnRead = false " +
+            "AND u.followerCount > :maxFollowers")
+    int markFanOutOnReadIfFollowersAbove(@Param("userId") Long userId, @Param("maxFollowers") long maxFollowers);
+    @Query("SELECT u.fanOutOnRead FROM User u WHERE u.id = :userId")
+    Optional<Boolean> findFanOutOnReadById(@Param("userId") Long userId);
+    @Query("SELECT u.id FROM User u WHERE u.fanOutOnRead = true")
+    List<Long> findFanOutOnReadUserIds();
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users u SET " +
+            "u.poll_count = (SELECT COUNT(p.id) FROM polls p WHERE p.created_by = u.id), " +
+            "u.vote_count = (SELECT COUNT(v.id) FROM votes v WHERE v.user_id = u.id) " +
+            "+ (SELECT COUNT(a.id) FROM archived_votes a WHERE a.user_id = u.id) " +
+            "WHERE u.poll_count <> (SELECT COUNT(p.id) FROM polls p WHERE p.created_by = u.id) " +
+            "OR u.vote_count <> (SELECT COUNT(v.id) FROM votes v WHERE v.user_id = u.id) " +
+            "+ (SELECT COUNT(a.id) FROM archived_votes a WHERE a.user_id = u.id)", nativeQuery = true)
+    int recomputeActivityCounts();
 
 }
@@ -1,37 +1,104 @@
 package com.aaroncarlson.polls.repository;
 
-import com.aaroncarlson.polls.model.ChoiceVoteCount;
+import com.aaroncarlson.polls.model.PollVoteBucket;
 import com.aaroncarlson.polls.model.Vote;
-import org.springframework.data.domain.Page;
+import com.aaroncarlson.polls.model.VotedChoice;
+import com.aaroncarlson.polls.model.VotedPoll;
+import com.aaroncarlson.polls.model.VoterChoice;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * All the methods in the VoteRepository interface have a custom query (using @Query annotation), used custom queries because:
  *  - Many of the queries cannot be constructed by Spring-Data-Jpa's Dynamic Query Methods
  *  - Even if they could be constructed, they do not generate an optimized query
  * Note: Using JPQL constructor expression in some of the queries to return the query result in the form of a custom class
- * called ChoiceVoteCount
+ * called VoterChoice (or PollVoteBucket)
+ * Vote counts are read from the materialized counters of the choices (see ChoiceRepository), not counted here.
+ * The history of a user (the polls they voted in and the choices they picked) spans the votes of the archived polls as
+ * well (archived_votes, see PollArchiver): those queries are native UNION ALL queries, mapped by the default methods.
  */
 @Repository
 public interface VoteRepository extends JpaRepository<Vote, Long> {
 
-    @Query("SELECT NEW com.aaroncarlson.polls.model.ChoiceVoteCount(v.choice.id, count(v.id)) FROM Vote v WHERE v.poll.id in :pollIds GROUP BY v.choice.id")
-    List<ChoiceVoteCount> countByPollIdInGroupByChoiceId(@Param("pollIds") List<Long> pollIds);
-    @Query("SELECT NEW com.aaroncarlson.polls.model.ChoiceVoteCount(v.choice.id, count(v.id)) FROM Vote v WHERE v.poll.id = :pollId GROUP BY v.choice.id")
-    List<ChoiceVoteCount> countByPollIdGroupByChoiceId(@Param("pollId") Long pollId);
-    @Query("SELECT v FROM Vote v where v.user.id = :userId and v.poll.id in :pollIds")
-    List<Vote> findByUserIdAndPollIdIn(@Param("userId") Long userId, @Param("pollIds") List<Long> pollIds);
-    @Query("SELECT v FROM Vote v WHERE v.user.id = :userId and v.poll.id = :pollId")
-    Vote findByUserIdAndPollId(@Param("userId") Long userId, @Param("pollId") Long pollId);
-    @Query("SELECT COUNT(v.id) FROM Vote v WHERE v.user.id = :userId")
+    @Query("SELECT NEW com.aaroncarlson.polls.model.VoterChoice(v.user.id, v.choice.id) FROM Vote v WHERE v.poll.id = :pollId")
+    List<VoterChoice> findVoterChoicesByPollId(@Param("pollId") Long pollId);
+    // Votes cast in [from, to) per poll and per hour (or minute), used to rebuild the trending polls
+    @Query("SELECT NEW com.aaroncarlson.polls.model.PollVoteBucket(v.poll.id, year(v.createdAt), month(v.createdAt), " +
+            "day(v.createdAt), hour(v.createdAt), COUNT(v.id)) FROM Vote v WHERE v.createdAt >= :from AND v.createdAt < :to " +
+            "GROUP BY v.poll.id, year(v.createdAt), month(v.createdAt), day(v.createdAt), hour(v.createdAt)")
+    List<PollVoteBucket> countByPollIdGroupByHour(@Param("from") Instant from, @Param("to") Instant to);
+    @Query("SELECT NEW com.aaroncarlson.polls.model.PollVoteBucket(v.poll.id, year(v.createdAt), month(v.createdAt), " +
+            "day(v.createdAt), hour(v.createdAt), minute(v.createdAt), COUNT(v.id)) FROM Vote v WHERE v.createdAt >= :from AND v.createdAt < :to " +
+            "GROUP BY v.poll.id, year(v.createdAt), month(v.createdAt), day(v.createdAt), hour(v.createdAt), minute(v.createdAt)")
+    List<PollVoteBucket> countByPollIdGroupByMinute(@Param("from") Instant from, @Param("to") Instant to);
+    // Used by PollArchiver once the votes are copied to archived_votes
+    @Modifying
+    @Query("DELETE FROM Vote v WHERE v.poll.id = :pollId")
+    int deleteByPollId(@Param("pollId") Long pollId);
+
+    // Live and archived votes of a user
+    @Query(value = "SELECT (SELECT COUNT(v.id) FROM votes v WHERE v.user_id = :userId) " +
+            "+ (SELECT COUNT(a.id) FROM archived_votes a WHERE a.user_id = :userId)", nativeQuery = true)
     long countByUserId(@Param("userId") Long userId);
-    @Query("SELECT v.poll.id FROM Vote v WHERE v.user.id = :userId")
-    Page<Long> findVotedPollIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+    @Query(value = "SELECT v.poll_id, v.choice_id FROM votes v WHERE v.user_id = :userId AND v.poll_id IN :pollIds " +
+            "UNION ALL SELECT a.poll_id, a.choice_id FROM archived_votes a WHERE a.user_id = :userId AND a.poll_id IN :pollIds",
+            nativeQuery = true)
+    List<Object[]> findVotedChoiceRows(@Param("userId") Long userId, @Param("pollIds") List<Long> pollIds);
+    // Keyset pagination of the votes of a user by (created_at, id), newest first. Each side of the union is limited to
+    // the rows the page may need, read in order from its (user_id, created_at, id) index, only those are merged
+    @Query(value = "SELECT u.id, u.created_at, u.poll_id FROM (" +
+            "(SELECT v.id, v.created_at, v.poll_id FROM votes v WHERE v.user_id = :userId " +
+            "ORDER BY v.created_at DESC, v.id DESC LIMIT :branchLimit) " +
+            "UNION ALL (SELECT a.id, a.created_at, a.poll_id FROM archived_votes a WHERE a.user_id = :userId " +
+            "ORDER BY a.created_at DESC, a.id DESC LIMIT :branchLimit)" +
+            ") u ORDER BY u.created_at DESC, u.id DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Object[]> findVotedPollRows(@Param("userId") Long userId, @Param("branchLimit") long branchLimit,
+                                     @Param("limit") int limit, @Param("offset") long offset);
+    @Query(value = "SELECT u.id, u.created_at, u.poll_id FROM (" +
+            "(SELECT v.id, v.created_at, v.poll_id FROM votes v WHERE v.user_id = :userId " +
+            "AND (v.created_at < :createdAt OR (v.created_at = :createdAt AND v.id < :id)) " +
+            "ORDER BY v.created_at DESC, v.id DESC LIMIT :limit) " +
+            "UNION ALL (SELECT a.id, a.created_at, a.poll_id FROM archived_votes a WHERE a.user_id = :userId " +
+            "AND (a.created_at < :createdAt OR (a.created_at = :createdAt AND a.id < :id)) " +
+            "ORDER BY a.created_at DESC, a.id DESC LIMIT :limit)" +
+            ") u ORDER BY u.created_at DESC, u.id DESC LIMIT :limit", nativeQuery = true)
+    List<Object[]> findVotedPollRowsBefore(@Param("userId") Long userId, @Param("createdAt") Instant createdAt,
+                                           @Param("id") Long id, @Param("limit") int limit);
+
+    default List<VotedChoice> findVotedChoicesByUserIdAndPollIdIn(Long userId, List<Long> pollIds) {
+        return findVotedChoiceRows(userId, pollIds).stream()
+                .map(row -> new VotedChoice(((Number) row[0]).longValue(), ((Number) row[1]).longValue()))
+                .collect(Collectors.toList());
+    }
+
+    // The polls of the given page (offset pagination) of the user's votes
+    default List<VotedPoll> findVotedPollsByUserId(Long userId, Pageable pageable) {
+        long branchLimit = pageable.getOffset() + pageable.getPageSize();
+        return toVotedPolls(findVotedPollRows(userId, branchLimit, pageable.getPageSize(), pageable.getOffset()));
+    }
+
+    // The limit polls the user voted in before the given vote (keyset pagination), from the first one when null
+    default List<VotedPoll> findVotedPollsByUserIdBefore(Long userId, Instant createdAt, Long id, int limit) {
+        return toVotedPolls(createdAt == null
+                ? findVotedPollRows(userId, limit, limit, 0)
+                : findVotedPollRowsBefore(userId, createdAt, id, limit));
+    }
+
+    static List<VotedPoll> toVotedPolls(List<Object[]> rows) {
+        return rows.stream()
+                .map(row -> new VotedPoll(((Number) row[0]).longValue(), ((Timestamp) row[1]).toInstant(),
+                        ((Number) row[2]).longValue()))
+                .collect(Collectors.toList());
+    }
 
 }
@@ -7,7 +7,6 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 /**
  * CustomUserDetailsService class which loads a user's data given a username
@@ -15,32 +14,44 @@ import org.springframework.transaction.annotation.Transactional;
  * on username. CustomUserDetailsService provides the logic for the interface method. The return from the
  * interface (UserDetails object) is used by Spring Security for performing various authentication and role
  * based validations.
+ * Loaded users are kept in the UserPrincipalCache, so most calls do not hit the database at all.
  */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
 
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(String usernameOrEmail)
         throws UsernameNotFoundException {
         // Let people login with either username or email
-        User user = userRepository.findByUsernameOrEmail(usernameOrEmail, usernameOrEmail)
-                .orElseThrow(() ->
-                        new UsernameNotFoundException("User not found with username or email : " + usernameOrEmail));
+        return userPrincipalCache.getByUsernameOrEmail(usernameOrEmail, key -> {
+            User user = userRepository.findWithRolesByUsernameOrEmail(usernameOrEmail, usernameOrEmail)
+                    .orElseThrow(() ->
+                            new UsernameNotFoundException("User not found with username or email : " + usernameOrEmail));
 
-        return UserPrincipal.create(user);
+            return UserPrincipal.create(user);
+        });
     }
 
     // This method is used by JWTAuthenticationFilter
-    @Transactional
     public UserDetails loadUserById(Long id) {
-        User user = userRepository.findById(id).orElseThrow(
-                () -> new UsernameNotFoundException("User not found with id : " + id)
-        );
+        return userPrincipalCache.getById(id, key -> {
+            User user = userRepository.findWithRolesById(id).orElseThrow(
+                    () -> new UsernameNotFoundException("User not found with id : " + id)
+            );
+
+            return UserPrincipal.create(user);
+        });
+    }
 
-        return UserPrincipal.create(user);
+    /**
+     * To be called whenever a User is created or its profile, roles or credentials change
+     */
+    public void evictUser(Long id) {
+        userPrincipalCache.evict(id);
     }
 }
@@ -1,7 +1,11 @@
 package com.aaroncarlson.polls.security;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -24,6 +28,11 @@ import java.io.IOException;
  * database hit. However, loading the current details of the user from the database might still be helpful. For example,
  * you might wanna disallow login with this JWT if the user's role has changed, or the user has updated his password
  * after the creation of the this JWT.
+ * With app.jwtStatelessAuth enabled the UserPrincipal is built from the JWT claims instead, and the JWT is only
+ * accepted while the security version it carries is the current one (see UserSecurityVersionStore). JWTs issued
+ * before the claims existed still go through the database.
+ * Either way a JWT carrying an older security version than the user's is rejected, which is how the JWTs of a user are
+ * revoked (UserSecurityVersionStore.bumpSecurityVersion, e.g. POST /api/auth/signoutAll).
  */
 @Slf4j
 public class JWTAuthenticationFilter extends OncePerRequestFilter {
@@ -32,34 +41,70 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
     private JwtTokenProvider tokenProvider;
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
+    @Autowired
+    private UserSecurityVersionStore userSecurityVersionStore;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${app.jwtStatelessAuth}")
+    private boolean statelessAuth;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
+        // Time spent authenticating the request ("polls.jwt.filter" timer), tagged by outcome
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "anonymous";
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                Long userId = tokenProvider.getUserIdFromJWT(jwt);
+            // Validated claims of the JWT, parsed (and signature checked) only once per token
+            Claims claims = StringUtils.hasText(jwt) ? tokenProvider.parseToken(jwt) : null;
 
-                /*
-                    Note that you could also encode the user's username and roles inside the JWT claims
-                    and create the UserDetails object by parsing those claims form the JWT.
-                    That would avoid the following database hit.
-                 */
-                UserDetails userDetails = customUserDetailsService.loadUserById(userId);
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails,
-                        null, userDetails.getAuthorities());
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            if (StringUtils.hasText(jwt) && claims == null) {
+                outcome = "invalid";
+            }
+            if (claims != null) {
+                UserDetails userDetails = loadUserDetails(claims);
+                outcome = userDetails != null ? "authenticated" : "rejected";
 
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+                if (userDetails != null) {
+                    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails,
+                            null, userDetails.getAuthorities());
+                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                }
             }
         } catch (Exception exception) {
             log.error("Could not set user authentication security context", exception);
+            outcome = "error";
         }
+        sample.stop(meterRegistry.timer("polls.jwt.filter", "outcome", outcome));
         filterChain.doFilter(request, response);
     }
 
+    private UserDetails loadUserDetails(Claims claims) {
+        if (statelessAuth) {
+            UserPrincipal userPrincipal = tokenProvider.getUserPrincipal(claims);
+            if (userPrincipal != null) {
+                if (!userSecurityVersionStore.isCurrent(userPrincipal.getId(), userPrincipal.getSecurityVersion())) {
+                    log.info("Rejected revoked JWT of User {}", userPrincipal.getId());
+                    return null;
+                }
+                return userPrincipal;
+            }
+        }
+
+        Long userId = tokenProvider.getUserId(claims);
+        UserPrincipal userPrincipal = (UserPrincipal) customUserDetailsService.loadUserById(userId);
+        Long securityVersion = tokenProvider.getSecurityVersion(claims);
+        if (securityVersion != null && securityVersion != userPrincipal.getSecurityVersion()) {
+            log.info("Rejected revoked JWT of User {}", userId);
+            return null;
+        }
+        return userPrincipal;
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
@@ -1,26 +1,82 @@
 package com.aaroncarlson.polls.security;
 
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.jsonwebtoken.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Following utility class will be used for generating a JWT after a user logs in successfully, and
- * validates the JWT sent in the Authorization header of the request
+ * validates the JWT sent in the Authorization header of the request.
+ * Besides the user's id (subject), the JWT carries the username, name, roles and security version of the user, which
+ * is enough to rebuild the UserPrincipal without a database hit (see app.jwtStatelessAuth).
+ * Parsing a JWT (HS512 signature check and JSON decoding) is done once per token: the validated claims are cached,
+ * keyed by the SHA-256 digest of the token, until the token expires. A forged or altered token has a different
+ * digest, so it never matches a cached entry and goes through the full validation.
  */
 @Slf4j
 @Component
 public class JwtTokenProvider {
 
+    private static final String USERNAME_CLAIM = "username";
+    private static final String NAME_CLAIM = "name";
+    private static final String ROLES_CLAIM = "roles";
+    private static final String SECURITY_VERSION_CLAIM = "sv";
+
     // Read from application.properties file
     @Value("${app.jwtSecret}")
     private String jwtSecret;
     @Value("${app.jwtExpirationInMs}")
     private int jwtExpirationInMs;
+    @Value("${app.jwtCacheMaxSize}")
+    private long jwtCacheMaxSize;
+
+    private Cache<ByteBuffer, Claims> parsedTokens;
+
+    @PostConstruct
+    public void init() {
+        parsedTokens = Caffeine.newBuilder()
+                .maximumSize(jwtCacheMaxSize)
+                .expireAfter(new Expiry<ByteBuffer, Claims>() {
+                    @Override
+                    public long expireAfterCreate(ByteBuffer digest, Claims claims, long currentTime) {
+                        long expiresInMs = claims.getExpiration() != null
+                                ? claims.getExpiration().getTime() - System.currentTimeMillis()
+                                : jwtExpirationInMs;
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresInMs));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(ByteBuffer digest, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(ByteBuffer digest, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
 
     public String generateToken(Authentication authentication) {
 
@@ -29,26 +85,85 @@ public class JwtTokenProvider {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpirationInMs);
 
+        List<String> roles = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+
         return Jwts.builder()
                 .setSubject(Long.toString(userPrincipal.getId()))
+                .claim(USERNAME_CLAIM, userPrincipal.getUsername())
+                .claim(NAME_CLAIM, userPrincipal.getName())
+                .claim(ROLES_CLAIM, roles)
+                .claim(SECURITY_VERSION_CLAIM, userPrincipal.getSecurityVersion())
                 .setIssuedAt(new Date())
                 .setExpiration(expiryDate)
                 .signWith(SignatureAlgorithm.HS512, jwtSecret)
                 .compact();
     }
 
-    public Long getUserIdFromJWT(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(jwtSecret)
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Returns the validated claims of the JWT, or null if the JWT is not valid
+     */
+    public Claims parseToken(String token) {
+        ByteBuffer digest = digest(token);
+        Claims claims = parsedTokens.getIfPresent(digest);
+        if (claims == null) {
+            claims = parseAndValidate(token);
+            if (claims != null) {
+                parsedTokens.put(digest, claims);
+            }
+        }
+        return claims;
+    }
+
+    public Long getUserId(Claims claims) {
         return Long.parseLong(claims.getSubject());
     }
 
-    public boolean validateToken(String authToken) {
+    /**
+     * Returns the security version of the user when the JWT was issued, or null for JWTs issued before the claim was
+     * added
+     */
+    public Long getSecurityVersion(Claims claims) {
+        Number securityVersion = claims.get(SECURITY_VERSION_CLAIM, Number.class);
+        return securityVersion != null ? securityVersion.longValue() : null;
+    }
+
+    /**
+     * Builds the UserPrincipal from the claims of the JWT alone, returns null for JWTs issued before the claims
+     * were added (those still need the user to be loaded from the database)
+     */
+    public UserPrincipal getUserPrincipal(Claims claims) {
+        if (!claims.containsKey(USERNAME_CLAIM) || !claims.containsKey(SECURITY_VERSION_CLAIM)) {
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<String> roles = claims.get(ROLES_CLAIM, List.class);
+        List<GrantedAuthority> authorities = roles.stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+
+        return new UserPrincipal(
+                getUserId(claims),
+                claims.get(NAME_CLAIM, String.class),
+                claims.get(USERNAME_CLAIM, String.class),
+                null,
+                null,
+                authorities,
+                claims.get(SECURITY_VERSION_CLAIM, Number.class).longValue()
+        );
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        CacheStats stats = parsedTokens.stats();
+        return new CacheStatistics("jwt", parsedTokens.estimatedSize(),
+                stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    private Claims parseAndValidate(String authToken) {
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-            return true;
+            return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken).getBody();
         } catch (SignatureException exception) {
             log.error("Invalid JWT signature");
         } catch (MalformedJwtException exception) {
@@ -60,6 +175,15 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException exception) {
             log.error("JWT claims string is empty");
         }
-        return false;
+        return null;
+    }
+
+    private ByteBuffer digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
     }
 }
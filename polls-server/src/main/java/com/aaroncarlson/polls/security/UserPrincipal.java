@@ -29,15 +29,18 @@ public class UserPrincipal implements UserDetails {
     @JsonIgnore
     private String password;
     private Collection<? extends GrantedAuthority> authorities;
+    @JsonIgnore
+    private long securityVersion;
 
     public UserPrincipal(Long id, String name, String username, String email, String password,
-                         Collection<? extends GrantedAuthority> authorities) {
+                         Collection<? extends GrantedAuthority> authorities, long securityVersion) {
         this.id = id;
         this.name = name;
         this.username = username;
         this.email = email;
         this.password = password;
         this.authorities = authorities;
+        this.securityVersion = securityVersion;
     }
 
     public static UserPrincipal create(User user) {
@@ -51,7 +54,8 @@ public class UserPrincipal implements UserDetails {
                 user.getUsername(),
                 user.getEmail(),
                 user.getPassword(),
-                authorities
+                authorities,
+                user.getSecurityVersion()
         );
     }
 
@@ -0,0 +1,118 @@
+package com.aaroncarlson.polls.security;
+
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded (size and TTL) cache of the UserPrincipals loaded by CustomUserDetailsService, keyed both by user id (used
+ * by JWTAuthenticationFilter on every request) and by username/email (used when signing in).
+ * Anything that changes a User (registration, profile, roles or credentials) must call evict, the entries of the user
+ * are then dropped once the change is committed. The login keys cached for every user are indexed by user id, so that
+ * evicting a user does not scan the cache.
+ */
+@Component
+public class UserPrincipalCache {
+
+    @Value("${app.userCache.maxSize}")
+    private long maxSize;
+    @Value("${app.userCache.ttlMs}")
+    private long ttlMs;
+
+    private Cache<Long, UserPrincipal> principalsById;
+    private Cache<String, UserPrincipal> principalsByLogin;
+    // Login keys of the entries of principalsByLogin, by user id
+    private final ConcurrentMap<Long, Set<String>> loginKeysById = new ConcurrentHashMap<>();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        principalsById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        principalsByLogin = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .removalListener((String loginKey, UserPrincipal userPrincipal, RemovalCause cause) -> {
+                    if (userPrincipal != null) {
+                        removeLoginKey(userPrincipal.getId(), loginKey);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    public UserPrincipal getById(Long userId, Function<Long, UserPrincipal> loader) {
+        return principalsById.get(userId, loader);
+    }
+
+    public UserPrincipal getByUsernameOrEmail(String usernameOrEmail, Function<String, UserPrincipal> loader) {
+        // Usernames and emails are compared case insensitively by the database
+        return principalsByLogin.get(usernameOrEmail.toLowerCase(Locale.ROOT), key -> {
+            UserPrincipal userPrincipal = loader.apply(usernameOrEmail);
+            loginKeysById.computeIfAbsent(userPrincipal.getId(), userId -> ConcurrentHashMap.newKeySet()).add(key);
+            return userPrincipal;
+        });
+    }
+
+    public void evict(Long userId) {
+        // Within a transaction, evict once more after commit in case a concurrent request reloaded the old state
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evictNow(userId);
+                }
+            });
+        }
+        evictNow(userId);
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats byId = principalsById.stats();
+        CacheStats byLogin = principalsByLogin.stats();
+        return new CacheStatistics("users",
+                principalsById.estimatedSize() + principalsByLogin.estimatedSize(),
+                byId.hitCount() + byLogin.hitCount(),
+                byId.missCount() + byLogin.missCount(),
+                byId.evictionCount() + byLogin.evictionCount() + invalidations.sum());
+    }
+
+    private void evictNow(Long userId) {
+        principalsById.invalidate(userId);
+        Set<String> loginKeys = loginKeysById.remove(userId);
+        if (loginKeys != null) {
+            principalsByLogin.invalidateAll(loginKeys);
+        }
+        invalidations.increment();
+    }
+
+    // Called when an entry of principalsByLogin is removed, unless the key has been loaded again in the meantime
+    private void removeLoginKey(Long userId, String loginKey) {
+        if (principalsByLogin.asMap().containsKey(loginKey)) {
+            return;
+        }
+        loginKeysById.computeIfPresent(userId, (id, loginKeys) -> {
+            loginKeys.remove(loginKey);
+            return loginKeys.isEmpty() ? null : loginKeys;
+        });
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.aaroncarlson.polls.security;
+
+import com.aaroncarlson.polls.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the security version of recently seen users, so that a stateless JWT (whose claims replace the user lookup)
+ * can still be revoked: every JWT carries the security version of its user at the time it was issued, and is only
+ * accepted while that version is still the current one.
+ * Versions are cached in memory and only read from the database when unknown or older than
+ * app.jwtSecurityVersionTtlMs (which bounds how long a change made through another node goes unnoticed).
+ * A change made through this node (bumpSecurityVersion, e.g. a user signing out everywhere) is visible immediately.
+ */
+@Component
+public class UserSecurityVersionStore {
+
+    private static final long MAX_CACHED_USERS = 100_000;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+    @Value("${app.jwtSecurityVersionTtlMs}")
+    private long securityVersionTtlMs;
+
+    private Cache<Long, Long> securityVersions;
+
+    @PostConstruct
+    public void init() {
+        securityVersions = Caffeine.newBuilder()
+                .maximumSize(MAX_CACHED_USERS)
+                .expireAfterWrite(securityVersionTtlMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public boolean isCurrent(Long userId, long securityVersion) {
+        Long currentVersion = securityVersions.get(userId,
+                id -> userRepository.findSecurityVersionById(id).orElse(null));
+        return currentVersion != null && currentVersion == securityVersion;
+    }
+
+    /**
+     * Revokes every JWT issued to the user so far, to be called whenever the roles or credentials of a user change
+     */
+    @Transactional
+    public void bumpSecurityVersion(Long userId) {
+        userRepository.incrementSecurityVersion(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Forget the old version (and the UserPrincipal carrying it) only once the new one is visible to other
+            // transactions
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    forget(userId);
+                }
+            });
+        } else {
+            forget(userId);
+        }
+    }
+
+    private void forget(Long userId) {
+        securityVersions.invalidate(userId);
+        userPrincipalCache.evict(userId);
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.exception.BadRequestException;
+import com.aaroncarlson.polls.exception.ResourceNotFoundException;
+import com.aaroncarlson.polls.model.FeedEntry;
+import com.aaroncarlson.polls.model.Follow;
+import com.aaroncarlson.polls.model.Poll;
+import com.aaroncarlson.polls.model.User;
+import com.aaroncarlson.polls.repository.FeedItemRepository;
+import com.aaroncarlson.polls.repository.FollowRepository;
+import com.aaroncarlson.polls.repository.PollRepository;
+import com.aaroncarlson.polls.repository.UserRepository;
+import com.aaroncarlson.polls.util.Cursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The home feed of a User: the polls created by the users they follow, newest first. Feeds are precomputed so that
+ * reading a page costs the same whatever the number of polls and follows:
+ *  - fan-out on write: createPoll copies the Poll to the feed of every follower of its creator (feed_items), in the
+ *    transaction of the Poll and with a single INSERT ... SELECT
+ *  - fan-out on read: the polls of the creators followed by more than app.feed.fanOutMaxFollowers users are not
+ *    copied, the feed reads them from the polls table (creator index) and merges them into the page. A creator is
+ *    switched for good once they cross the limit, so that none of their polls falls between the two paths.
+ *  - following a creator backfills their app.feed.backfillSize latest polls, unfollowing them removes their polls
+ *  - feeds are bounded: every app.feed.trimIntervalMs the oldest items of the feeds grown past app.feed.maxItems are
+ *    deleted
+ * A page is read by at most three queries bounded by its size. The creators switched to fan-out on read are few,
+ * they are kept in memory and reloaded every app.feed.reloadMs (picks up the switches made by other nodes).
+ */
+@Slf4j
+@Component
+public class HomeFeed {
+
+    private static final int TRIM_BATCH_SIZE = 100;
+
+    @Autowired
+    private FeedItemRepository feedItemRepository;
+    @Autowired
+    private FollowRepository followRepository;
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${app.feed.fanOutMaxFollowers}")
+    private long fanOutMaxFollowers;
+    @Value("${app.feed.backfillSize}")
+    private int backfillSize;
+    @Value("${app.feed.maxItems}")
+    private long maxItems;
+
+    private volatile Set<Long> fanOutOnReadCreatorIds = Collections.emptySet();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.feed.reloadMs}", initialDelayString = "${app.feed.reloadMs}")
+    public void reloadFanOutOnReadCreators() {
+        fanOutOnReadCreatorIds = Collections.unmodifiableSet(new HashSet<>(userRepository.findFanOutOnReadUserIds()));
+    }
+
+    /**
+     * Adds the Poll to the feeds of the followers of its creator, called by createPoll in its transaction
+     */
+    public void onPollCreated(Poll poll) {
+        Long creatorId = poll.getCreatedBy();
+        if (creatorId == null || fanOutOnReadCreatorIds.contains(creatorId)
+                || userRepository.findFanOutOnReadById(creatorId).orElse(false)) {
+            return;
+        }
+        int followers = feedItemRepository.fanOut(poll.getId(), creatorId, poll.getCreatedAt());
+        meterRegistry.counter("polls.feed.fanout.items").increment(followers);
+    }
+
+    @Transactional
+    public void follow(Long followerId, String username) {
+        User followee = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+        if (followee.getId().equals(followerId)) {
+            throw new BadRequestException("Sorry! You cannot follow yourself");
+        }
+
+        try {
+            // Flush right away, the unique constraint on (follower_id, followee_id) is only checked when the insert runs
+            followRepository.saveAndFlush(new Follow(followerId, followee.getId(), Instant.now()));
+        } catch (DataIntegrityViolationException exception) {
+            throw new BadRequestException("You are already following " + username);
+        }
+        userRepository.incrementFollowerCount(followee.getId(), 1L);
+        if (userRepository.markFanOutOnReadIfFollowersAbove(followee.getId(), fanOutMaxFollowers) > 0) {
+            addFanOutOnReadCreator(followee.getId());
+            log.info("User {} has more than {} followers, their polls are read with the feeds from now on",
+                    followee.getId(), fanOutMaxFollowers);
+        }
+        if (!followee.isFanOutOnRead()) {
+            feedItemRepository.backfill(followerId, followee.getId(), backfillSize);
+        }
+    }
+
+    @Transactional
+    public void unfollow(Long followerId, String username) {
+        User followee = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+        if (followRepository.deleteByFollowerIdAndFolloweeId(followerId, followee.getId()) == 0) {
+            throw new BadRequestException("You are not following " + username);
+        }
+        userRepository.incrementFollowerCount(followee.getId(), -1L);
+        feedItemRepository.deleteByUserIdAndCreatorId(followerId, followee.getId());
+    }
+
+    /**
+     * Returns up to limit entries of the feed of the user following the given cursor (null for the first page), newest
+     * polls first
+     */
+    public List<FeedEntry> getEntries(Long userId, Cursor after, int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+        List<FeedEntry> entries = after == null
+                ? feedItemRepository.findFeedEntries(userId, pageable)
+                : feedItemRepository.findFeedEntriesBefore(userId, after.getCreatedAt(), after.getId(), pageable);
+
+        Set<Long> fanOutOnReadCreators = fanOutOnReadCreatorIds;
+        if (fanOutOnReadCreators.isEmpty()) {
+            return entries;
+        }
+        List<Long> followedCreatorIds = followRepository.findFolloweeIdsIn(userId, fanOutOnReadCreators);
+        if (followedCreatorIds.isEmpty()) {
+            return entries;
+        }
+        List<FeedEntry> readEntries = after == null
+                ? pollRepository.findFeedEntriesByCreatedByIn(followedCreatorIds, pageable)
+                : pollRepository.findFeedEntriesByCreatedByInBefore(followedCreatorIds, after.getCreatedAt(), after.getId(), pageable);
+
+        // Merge both, the polls created before their creator was switched may be in both
+        Map<Long, FeedEntry> merged = new LinkedHashMap<>();
+        entries.forEach(entry -> merged.put(entry.getPollId(), entry));
+        readEntries.forEach(entry -> merged.putIfAbsent(entry.getPollId(), entry));
+        List<FeedEntry> mergedEntries = new ArrayList<>(merged.values());
+        mergedEntries.sort(Comparator.comparing(FeedEntry::getCreatedAt).thenComparing(FeedEntry::getPollId).reversed());
+        return mergedEntries.size() > limit ? mergedEntries.subList(0, limit) : mergedEntries;
+    }
+
+    @Scheduled(fixedDelayString = "${app.feed.trimIntervalMs}", initialDelayString = "${app.feed.trimIntervalMs}")
+    public void trimFeeds() {
+        long startedAt = System.currentTimeMillis();
+        long trimmedItems = 0;
+        List<Long> userIds;
+        do {
+            userIds = feedItemRepository.findUserIdsWithMoreItemsThan(maxItems, PageRequest.of(0, TRIM_BATCH_SIZE));
+            for (Long userId : userIds) {
+                Integer deletedItems = transactionTemplate.execute(status -> trim(userId));
+                trimmedItems += deletedItems != null ? deletedItems : 0;
+            }
+        } while (userIds.size() == TRIM_BATCH_SIZE);
+
+        if (trimmedItems > 0) {
+            meterRegistry.counter("polls.feed.trimmed.items").increment(trimmedItems);
+            log.info("Trimmed {} feed item(s) in {} ms", trimmedItems, System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    // Deletes the items of the feed of the user past the first app.feed.maxItems
+    private int trim(Long userId) {
+        List<FeedEntry> firstDropped = feedItemRepository.findFeedEntries(userId, PageRequest.of((int) maxItems, 1));
+        if (firstDropped.isEmpty()) {
+            return 0;
+        }
+        FeedEntry entry = firstDropped.get(0);
+        return feedItemRepository.deleteByUserIdUpTo(userId, entry.getCreatedAt(), entry.getPollId());
+    }
+
+    private synchronized void addFanOutOnReadCreator(Long userId) {
+        Set<Long> creatorIds = new HashSet<>(fanOutOnReadCreatorIds);
+        creatorIds.add(userId);
+        fanOutOnReadCreatorIds = Collections.unmodifiableSet(creatorIds);
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded (size and TTL) cache of the Idempotency-Key headers of the votes acknowledged asynchronously, keyed by user
+ * so that keys picked by different clients never collide. A client retrying a vote with the same key gets the same
+ * acknowledgement instead of an "already voted" error.
+ */
+@Component
+public class IdempotencyKeyCache {
+
+    @Value("${app.asyncVotes.idempotencyKeyMaxSize}")
+    private long maxSize;
+    @Value("${app.asyncVotes.idempotencyKeyTtlMs}")
+    private long ttlMs;
+
+    private Cache<String, PendingVote> votesByKey;
+
+    @PostConstruct
+    public void init() {
+        votesByKey = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Associates the vote with the key of the user, returns the vote previously associated with it (null if none)
+     */
+    public PendingVote putIfAbsent(Long userId, String idempotencyKey, PendingVote vote) {
+        PendingVote stored = votesByKey.get(cacheKey(userId, idempotencyKey), key -> vote);
+        return stored == vote ? null : stored;
+    }
+
+    // Releases the key of a vote that was not accepted, so that the client can retry it
+    public void remove(Long userId, String idempotencyKey) {
+        votesByKey.invalidate(cacheKey(userId, idempotencyKey));
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = votesByKey.stats();
+        return new CacheStatistics("idempotencyKeys", votesByKey.estimatedSize(),
+                stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    private String cacheKey(Long userId, String idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.exception.ServiceUnavailableException;
+import com.aaroncarlson.polls.metrics.SqlStatementCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent read queries (branches) of a request concurrently, so that the request waits for the slowest one
+ * instead of their sum. PollService uses it to read the missing poll skeletons, the vote counts and the choices of the
+ * current user of a page of polls at the same time.
+ *  - The last branch runs on the calling thread, the others on a pool of app.parallelQueries.poolSize threads. A full
+ *    queue runs the branch on the calling thread as well, so the branches degrade to sequential execution.
+ *  - Branches run outside of the caller's transaction, with a JDBC connection of their own. The caller keeps its
+ *    connection while it waits, so callers holding every connection would wait for branches that cannot get one:
+ *    at most spring.datasource.hikari.maximum-pool-size - app.parallelQueries.poolSize callers run their branches
+ *    concurrently, the others run them sequentially. The wait is bounded by app.parallelQueries.timeoutMs (503
+ *    Service Unavailable).
+ *  - Every branch is timed ("polls.query.branch" timer tagged with the branch name) and its SQL statements are
+ *    counted as statements of the calling request.
+ */
+@Component
+public class ParallelQueries {
+
+    @Value("${app.parallelQueries.enabled}")
+    private boolean enabled;
+    @Value("${app.parallelQueries.poolSize}")
+    private int poolSize;
+    @Value("${app.parallelQueries.queueCapacity}")
+    private int queueCapacity;
+    @Value("${app.parallelQueries.timeoutMs}")
+    private long timeoutMs;
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+    // Callers waiting for branches, each of them holds a JDBC connection
+    private Semaphore callers;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "query-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        callers = new Semaphore(Math.max(0, connectionPoolSize - poolSize));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public <T> Branch<T> branch(String name, Supplier<T> query) {
+        return new Branch<>(name, query);
+    }
+
+    /**
+     * Runs the given branches and waits for all of them, their results are then available from Branch.get
+     */
+    public void runAll(List<Branch<?>> branches) {
+        if (!enabled || branches.size() < 2 || !callers.tryAcquire()) {
+            branches.forEach(Branch::run);
+            return;
+        }
+
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            for (Branch<?> branch : branches.subList(0, branches.size() - 1)) {
+                executor.execute(branch.task);
+            }
+            branches.get(branches.size() - 1).run();
+
+            for (Branch<?> branch : branches) {
+                branch.await(deadline);
+            }
+        } catch (ServiceUnavailableException exception) {
+            // Give the connections of the branches still running back to the pool
+            branches.forEach(branch -> branch.task.cancel(true));
+            throw exception;
+        } finally {
+            callers.release();
+        }
+    }
+
+    /**
+     * A query of a request, its result is read with get once runAll returns
+     */
+    public final class Branch<T> {
+
+        private final String name;
+        private final FutureTask<T> task;
+        private final long submittedAt = System.nanoTime();
+        private volatile Thread runner;
+        private volatile int statementCount;
+        private boolean counted;
+
+        private Branch(String name, Supplier<T> query) {
+            this.name = name;
+            this.task = new FutureTask<>(() -> {
+                runner = Thread.currentThread();
+                int statementsBefore = SqlStatementCounter.getCount();
+                try {
+                    return query.get();
+                } finally {
+                    statementCount = SqlStatementCounter.getCount() - statementsBefore;
+                    // Time spent in the queue included, it is part of what the request waits for
+                    Timer.builder("polls.query.branch")
+                            .tag("branch", name)
+                            .register(meterRegistry)
+                            .record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+
+        public T get() {
+            // Statements run on the calling thread (inline branches) are already counted there
+            if (!counted && runner != Thread.currentThread()) {
+                SqlStatementCounter.add(statementCount);
+            }
+            counted = true;
+            try {
+                return task.get();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new ServiceUnavailableException("Interrupted while reading " + name);
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        private void run() {
+            task.run();
+        }
+
+        private void await(long deadline) {
+            try {
+                task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException exception) {
+                throw new ServiceUnavailableException("Timed out reading " + name + ", please try again later");
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new ServiceUnavailableException("Interrupted while reading " + name);
+            } catch (ExecutionException exception) {
+                // Rethrown by get
+            }
+        }
+    }
+
+}
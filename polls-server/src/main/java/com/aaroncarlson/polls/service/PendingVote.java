@@ -0,0 +1,21 @@
+package com.aaroncarlson.polls.service;
+
+import lombok.Getter;
+
+/**
+ * A Vote accepted by the VoteTallyEngine that has not been written to the votes table yet
+ */
+@Getter
+public class PendingVote {
+
+    private final Long pollId;
+    private final Long choiceId;
+    private final Long userId;
+
+    public PendingVote(Long pollId, Long choiceId, Long userId) {
+        this.pollId = pollId;
+        this.choiceId = choiceId;
+        this.userId = userId;
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.repository.ArchivedVoteRepository;
+import com.aaroncarlson.polls.repository.ChoiceRepository;
+import com.aaroncarlson.polls.repository.PollRepository;
+import com.aaroncarlson.polls.repository.VoteRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Moves the polls that expired more than app.archive.graceMs ago out of the hot tables, so that the votes table (and
+ * its indexes) only holds the votes of the live and recently expired polls. Archiving a Poll:
+ *  - marks it archived (archivedAt), which also tells the other nodes that it is taken care of
+ *  - recomputes the vote counters of its choices from its votes one last time, they are its final results from then
+ *    on (VoteCountReconciler leaves them alone) and are cached with its skeleton (PollSkeletonCache)
+ *  - moves its votes from the votes table to archived_votes, which only serves the history of their users
+ * Every Poll is archived in a transaction of its own, up to app.archive.batchSize polls every app.archive.intervalMs.
+ * The grace period should exceed the trending window (a day) and the write-behind of the vote tally.
+ */
+@Slf4j
+@Component
+public class PollArchiver {
+
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private ChoiceRepository choiceRepository;
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private ArchivedVoteRepository archivedVoteRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private PollSkeletonCache pollSkeletonCache;
+    @Autowired
+    private VoteTallyEngine voteTallyEngine;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${app.archive.enabled}")
+    private boolean enabled;
+    @Value("${app.archive.graceMs}")
+    private long graceMs;
+    @Value("${app.archive.batchSize}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${app.archive.intervalMs}", initialDelayString = "${app.archive.intervalMs}")
+    public void archiveExpiredPolls() {
+        if (!enabled) {
+            return;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        Instant expiredBefore = Instant.now().minus(Duration.ofMillis(graceMs));
+        List<Long> pollIds = pollRepository.findPollIdsToArchive(expiredBefore, PageRequest.of(0, batchSize));
+        int archivedPolls = 0;
+        long archivedVotes = 0;
+        for (Long pollId : pollIds) {
+            Integer movedVotes = transactionTemplate.execute(status -> archive(pollId));
+            if (movedVotes != null) {
+                archivedPolls++;
+                archivedVotes += movedVotes;
+                // Drop what was cached of the live Poll, its skeleton is read again with its final results
+                pollSkeletonCache.evict(pollId);
+                voteTallyEngine.evict(pollId);
+            }
+        }
+
+        if (archivedPolls > 0) {
+            meterRegistry.counter("polls.archive.polls").increment(archivedPolls);
+            meterRegistry.counter("polls.archive.votes").increment(archivedVotes);
+            log.info("Archived {} poll(s) and {} vote(s) in {} ms", archivedPolls, archivedVotes,
+                    System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    // Returns the number of votes moved, null when the Poll was archived by another node in the meantime
+    private Integer archive(Long pollId) {
+        // Locks the Poll, a node archiving it concurrently waits and then finds it archived
+        if (pollRepository.markArchived(pollId, Instant.now()) == 0) {
+            return null;
+        }
+        choiceRepository.recomputeVoteCountsOfPoll(pollId);
+        int copiedVotes = archivedVoteRepository.copyVotesOfPoll(pollId);
+        int deletedVotes = voteRepository.deleteByPollId(pollId);
+        if (copiedVotes != deletedVotes) {
+            // Rolls the transaction back, the Poll is archived again on the next run
+            throw new IllegalStateException("Votes of Poll " + pollId + " changed while archiving it (" + copiedVotes
+                    + " copied, " + deletedVotes + " deleted)");
+        }
+        return copiedVotes;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.payload.ChoiceResponse;
+import com.aaroncarlson.polls.payload.PollResponse;
+
+import java.util.List;
+
+/**
+ * Strong ETags of the poll responses, derived from the part of the responses that can change:
+ *  - for every poll its id, whether it is expired, the vote count of each of its choices and the choice selected by
+ *    the current user. The rest of a Poll never changes once created
+ *  - the current user and the page metadata (page, total, cursor...)
+ * The vote counts and selected choices are the ones the response shows, so a response whose selected choice was read
+ * from a stale UserVoteIndex entry gets another ETag once the entry is read again. Every node computes the same ETag
+ * for the same response, and a vote cast through any node changes the ETag of its Poll only.
+ */
+final class PollETags {
+
+    private PollETags() {
+    }
+
+    /**
+     * Strong ETag (quoted) of a response made of the given polls, as seen by the given user (null when anonymous),
+     * with the given page metadata
+     */
+    static String of(Long userId, List<PollResponse> pollResponses, Object... pageState) {
+        long hash = mix(0L, userId != null ? userId : 0L);
+        for (PollResponse pollResponse : pollResponses) {
+            hash = mix(hash, pollResponse.getId());
+            hash = mix(hash, pollResponse.getIsExpired() ? 1L : 0L);
+            hash = mix(hash, pollResponse.getSelectedChoice() != null ? pollResponse.getSelectedChoice() : 0L);
+            for (ChoiceResponse choice : pollResponse.getChoices()) {
+                hash = mix(hash, choice.getId());
+                hash = mix(hash, choice.getVoteCount());
+            }
+        }
+        for (Object state : pageState) {
+            hash = mix(hash, String.valueOf(state).hashCode());
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    // Order dependent combination, finalized with the MurmurHash3 fmix64
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x100000001b3L + 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.PollChoiceIdRow;
+import com.aaroncarlson.polls.model.PollMetadata;
+import com.aaroncarlson.polls.model.PollSkeleton;
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.aaroncarlson.polls.repository.PollRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Bounded cache of PollMetadata keyed by poll id, consulted first by the vote path to validate a vote (expiration and
+ * choice) without loading the Poll entity and its choices. An entry is a few dozen bytes, so far more polls fit than in
+ * PollSkeletonCache.
+ *  - A missing entry is derived from the cached skeleton of the Poll when there is one, read with a narrow projection
+ *    (ids and expiration only) otherwise
+ *  - Polls that do not exist are not cached, a Poll created afterwards with that id is read on its first vote
+ *  - Like the Poll it describes an entry never changes, it is only dropped when the cache is full or the Poll is
+ *    removed (evict)
+ */
+@Component
+public class PollMetadataCache {
+
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private PollSkeletonCache pollSkeletonCache;
+    @Value("${app.pollMetadataCache.maxSize}")
+    private long maxSize;
+
+    private Cache<Long, PollMetadata> metadata;
+
+    @PostConstruct
+    public void init() {
+        metadata = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the metadata of the Poll, or null if the Poll does not exist
+     */
+    public PollMetadata get(Long pollId) {
+        PollMetadata pollMetadata = metadata.getIfPresent(pollId);
+        if (pollMetadata == null) {
+            pollMetadata = load(pollId);
+            if (pollMetadata != null) {
+                metadata.put(pollId, pollMetadata);
+            }
+        }
+        return pollMetadata;
+    }
+
+    public void evict(Long pollId) {
+        metadata.invalidate(pollId);
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = metadata.stats();
+        return new CacheStatistics("pollMetadata", metadata.estimatedSize(),
+                stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    private PollMetadata load(Long pollId) {
+        PollSkeleton skeleton = pollSkeletonCache.getIfPresent(pollId);
+        if (skeleton != null) {
+            long[] choiceIds = skeleton.getChoices().stream().mapToLong(PollSkeleton.ChoiceSkeleton::getId).toArray();
+            return new PollMetadata(pollId, skeleton.getExpirationDateTime().toEpochMilli(), choiceIds,
+                    skeleton.getCreatedBy().getId());
+        }
+
+        List<PollChoiceIdRow> rows = pollRepository.findPollChoiceIdRowsById(pollId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        PollChoiceIdRow first = rows.get(0);
+        long[] choiceIds = rows.stream().mapToLong(PollChoiceIdRow::getChoiceId).toArray();
+        return new PollMetadata(pollId, first.getExpirationDateTime().toEpochMilli(), choiceIds, first.getCreatorId());
+    }
+
+}
@@ -2,31 +2,46 @@ package com.aaroncarlson.polls.service;
 
 import com.aaroncarlson.polls.exception.BadRequestException;
 import com.aaroncarlson.polls.exception.ResourceNotFoundException;
+import com.aaroncarlson.polls.exception.TooManyRequestsException;
 import com.aaroncarlson.polls.model.*;
+import com.aaroncarlson.polls.payload.BulkVoteRequest;
+import com.aaroncarlson.polls.payload.ConditionalResponse;
 import com.aaroncarlson.polls.payload.PagedResponse;
 import com.aaroncarlson.polls.payload.PollRequest;
 import com.aaroncarlson.polls.payload.PollResponse;
 import com.aaroncarlson.polls.payload.VoteRequest;
+import com.aaroncarlson.polls.repository.ChoiceRepository;
 import com.aaroncarlson.polls.repository.PollRepository;
 import com.aaroncarlson.polls.repository.UserRepository;
 import com.aaroncarlson.polls.repository.VoteRepository;
 import com.aaroncarlson.polls.security.UserPrincipal;
 import com.aaroncarlson.polls.util.AppConstants;
+import com.aaroncarlson.polls.util.Cursor;
 import com.aaroncarlson.polls.util.ModelMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -38,111 +53,219 @@ import java.util.stream.Collectors;
 @Service
 public class PollService {
 
+    // Keyset pagination order, id breaks the ties between polls (or votes) created at the same instant
+    private static final Sort KEYSET_SORT = new Sort(Sort.Direction.DESC, "createdAt").and(new Sort(Sort.Direction.DESC, "id"));
+
     @Autowired
     private PollRepository pollRepository;
     @Autowired
     private VoteRepository voteRepository;
     @Autowired
     private UserRepository userRepository;
-
-    public PagedResponse<PollResponse> getAllPolls(UserPrincipal currentUser, int page, int size) {
+    @Autowired
+    private ChoiceRepository choiceRepository;
+    @Autowired
+    private VoteTallyEngine voteTallyEngine;
+    @Autowired
+    private VoteBatchWriter voteBatchWriter;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private PollSkeletonCache pollSkeletonCache;
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+    @Autowired
+    private UserVoteIndex userVoteIndex;
+    @Autowired
+    private IdempotencyKeyCache idempotencyKeyCache;
+    @Autowired
+    private TrendingPolls trendingPolls;
+    @Autowired
+    private HomeFeed homeFeed;
+    @Autowired
+    private ParallelQueries parallelQueries;
+    @Value("${app.asyncVotes.enabled}")
+    private boolean asyncVotesEnabled;
+    @Value("${app.archive.maxAgeSeconds}")
+    private long archivedPollMaxAgeSeconds;
+
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getAllPolls(UserPrincipal currentUser, int page, int size,
+                                                                        String ifNoneMatch) {
         validatePageNumberAndSize(page, size);
 
-        // Retrieve Polls
+        // Retrieve the ids of the page of Polls
         Pageable pageable = PageRequest.of(page, size, Sort.Direction.DESC, "createdAt");
-        Page<Poll> polls = pollRepository.findAll(pageable);
-
-        if (polls.getNumberOfElements() == 0) {
-            return new PagedResponse<>(Collections.emptyList(), polls.getNumber(),
-                    polls.getSize(), polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
-        }
-
-        // Map Polls to PollResponses containing vote counts and poll creator details
-        List<Long> pollIds = polls.map(Poll::getId).getContent();
-        Map<Long, Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long, Long> pollUserVoteMap = getPollUserVoteMap(currentUser, pollIds);
-        Map<Long, User> creatorMap = getPollCreatorMap(polls.getContent());
+        Page<Long> pollIds = pollRepository.findPollIds(pageable);
 
-        List<PollResponse> pollResponses = polls.map(poll -> {
-            return ModelMapper.mapPollToPollResponse(poll,
-                    choiceVoteCountMap,
-                    creatorMap.get(poll.getCreatedBy()),
-                    pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null));
-        }).getContent();
+        // Read Polls with their vote counts and poll creator details, unless the client has them already
+        return getPollResponsesIfNoneMatch(pollIds.getContent(), currentUser, ifNoneMatch, pageState(pollIds),
+                pollResponses -> new PagedResponse<>(pollResponses, pollIds.getNumber(),
+                        pollIds.getSize(), pollIds.getTotalElements(), pollIds.getTotalPages(), pollIds.isLast()));
+    }
 
-        return new PagedResponse<>(pollResponses, polls.getNumber(),
-                polls.getSize(), polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
+    /**
+     * Cursor (keyset) pagination variant of getAllPolls: pages by (createdAt, id) from the given cursor (null or empty
+     * for the first page) and does not count the polls, so deep pages cost the same as the first one
+     */
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getAllPolls(UserPrincipal currentUser, String cursor, int size,
+                                                                        String ifNoneMatch) {
+        validatePageNumberAndSize(0, size);
+
+        // Retrieve the ids of the page of Polls
+        Cursor after = Cursor.decode(cursor);
+        Pageable pageable = PageRequest.of(0, size, KEYSET_SORT);
+        Slice<Long> pollIds = after == null
+                ? pollRepository.findPollIdSlice(pageable)
+                : pollRepository.findPollIdsBefore(after.getCreatedAt(), after.getId(), pageable);
+
+        // Read Polls with their vote counts and poll creator details, unless the client has them already
+        return getPollResponsesIfNoneMatch(pollIds.getContent(), currentUser, ifNoneMatch, pageState(pollIds),
+                pollResponses -> new PagedResponse<>(pollResponses, size, !pollIds.hasNext(), nextCursor(pollIds, pollResponses)));
     }
 
-    public PagedResponse<PollResponse> getPollsCreatedBy(String username, UserPrincipal currentUser, int page, int size) {
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getPollsCreatedBy(String username, UserPrincipal currentUser,
+                                                                              int page, int size, String ifNoneMatch) {
         validatePageNumberAndSize(page, size);
 
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
 
-        // Retrieve all polls created by the given username
+        // Retrieve the ids of the polls created by the given username
         Pageable pageable = PageRequest.of(page, size, Sort.Direction.DESC, "createdAt");
-        Page<Poll> polls = pollRepository.findByCreatedBy(user.getId(), pageable);
+        Page<Long> pollIds = pollRepository.findPollIdsByCreatedBy(user.getId(), pageable);
 
-        if (polls.getNumberOfElements() == 0) {
-            return new PagedResponse<>(Collections.emptyList(), polls.getNumber(),
-                    polls.getSize(), polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
-        }
+        // Read Polls with their vote counts and poll creator details, unless the client has them already
+        return getPollResponsesIfNoneMatch(pollIds.getContent(), currentUser, ifNoneMatch, pageState(pollIds),
+                pollResponses -> new PagedResponse<>(pollResponses, pollIds.getNumber(),
+                        pollIds.getSize(), pollIds.getTotalElements(), pollIds.getTotalPages(), pollIds.isLast()));
+    }
+
+    /**
+     * Cursor (keyset) pagination variant of getPollsCreatedBy
+     */
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getPollsCreatedBy(String username, UserPrincipal currentUser,
+                                                                              String cursor, int size, String ifNoneMatch) {
+        validatePageNumberAndSize(0, size);
 
-        // Map Polls to PollResponses containing vote counts and poll creator details
-        List<Long> pollIds = polls.map(Poll::getId).getContent();
-        Map<Long, Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long, Long> pollUserVoteMap = getPollUserVoteMap(currentUser, pollIds);
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
 
-        List<PollResponse> pollResponses = polls.map(poll -> {
-            return ModelMapper.mapPollToPollResponse(poll,
-                    choiceVoteCountMap,
-                    user,
-                    pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null));
-        }).getContent();
+        // Retrieve the ids of the polls created by the given username
+        Cursor after = Cursor.decode(cursor);
+        Pageable pageable = PageRequest.of(0, size, KEYSET_SORT);
+        Slice<Long> pollIds = after == null
+                ? pollRepository.findPollIdSliceByCreatedBy(user.getId(), pageable)
+                : pollRepository.findPollIdsByCreatedByBefore(user.getId(), after.getCreatedAt(), after.getId(), pageable);
 
-        return new PagedResponse<>(pollResponses, polls.getNumber(),
-                polls.getSize(), polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
+        // Read Polls with their vote counts and poll creator details, unless the client has them already
+        return getPollResponsesIfNoneMatch(pollIds.getContent(), currentUser, ifNoneMatch, pageState(pollIds),
+                pollResponses -> new PagedResponse<>(pollResponses, size, !pollIds.hasNext(), nextCursor(pollIds, pollResponses)));
     }
 
-    public PagedResponse<PollResponse> getPollsVotedBy(String username, UserPrincipal currentUser, int page, int size) {
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getPollsVotedBy(String username, UserPrincipal currentUser,
+                                                                            int page, int size, String ifNoneMatch) {
         validatePageNumberAndSize(page, size);
 
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
 
-        // Retrieve all pollIds in which the given username has voted
-        Pageable pageable = PageRequest.of(page, size, Sort.Direction.DESC, "createdAt");
-        Page<Long> userVotedPollIds = voteRepository.findVotedPollIdsByUserId(user.getId(), pageable);
+        // Retrieve the pollIds of a page of the polls in which the given username has voted (archived polls included)
+        Pageable pageable = PageRequest.of(page, size);
+        List<Long> votedPollIds = voteRepository.findVotedPollsByUserId(user.getId(), pageable).stream()
+                .map(VotedPoll::getPollId)
+                .collect(Collectors.toList());
+        Page<Long> userVotedPollIds = new PageImpl<>(votedPollIds, pageable, voteRepository.countByUserId(user.getId()));
+
+        // Read Polls with their vote counts and poll creator details, newest polls first, unless the client has them
+        // already
+        return getPollResponsesIfNoneMatch(userVotedPollIds.getContent(), currentUser, ifNoneMatch, pageState(userVotedPollIds),
+                unsortedPollResponses -> {
+                    List<PollResponse> pollResponses = new ArrayList<>(unsortedPollResponses);
+                    pollResponses.sort(Comparator.comparing(PollResponse::getCreationDateTime)
+                            .thenComparing(PollResponse::getId).reversed());
+                    return new PagedResponse<>(pollResponses, userVotedPollIds.getNumber(), userVotedPollIds.getSize(),
+                            userVotedPollIds.getTotalElements(), userVotedPollIds.getTotalPages(), userVotedPollIds.isLast());
+                });
+    }
+
+    /**
+     * Cursor (keyset) pagination variant of getPollsVotedBy, pages by the (createdAt, id) of the user's votes and
+     * returns the polls in the order the user voted in them
+     */
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getPollsVotedBy(String username, UserPrincipal currentUser,
+                                                                            String cursor, int size, String ifNoneMatch) {
+        validatePageNumberAndSize(0, size);
+
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
 
-        if (userVotedPollIds.getNumberOfElements() == 0) {
-            return new PagedResponse<>(Collections.emptyList(), userVotedPollIds.getNumber(),
-                    userVotedPollIds.getSize(), userVotedPollIds.getTotalElements(),
-                    userVotedPollIds.getTotalPages(), userVotedPollIds.isLast());
+        // Retrieve the votes of the given username (archived polls included), one more tells whether there is a next page
+        Cursor after = Cursor.decode(cursor);
+        List<VotedPoll> userVotes = new ArrayList<>(after == null
+                ? voteRepository.findVotedPollsByUserIdBefore(user.getId(), null, null, size + 1)
+                : voteRepository.findVotedPollsByUserIdBefore(user.getId(), after.getCreatedAt(), after.getId(), size + 1));
+
+        boolean hasNext = userVotes.size() > size;
+        String nextCursor = null;
+        if (hasNext) {
+            userVotes = userVotes.subList(0, size);
+            VotedPoll lastVote = userVotes.get(size - 1);
+            nextCursor = Cursor.encode(lastVote.getCreatedAt(), lastVote.getVoteId());
         }
 
-        // Retrieve all poll details from the voted pollIds.
-        List<Long> pollIds = userVotedPollIds.getContent();
+        // Read Polls with their vote counts and poll creator details, in voting order, unless the client has them
+        // already
+        List<Long> pollIds = userVotes.stream().map(VotedPoll::getPollId).collect(Collectors.toList());
+        String pageNextCursor = nextCursor;
+        return getPollResponsesIfNoneMatch(pollIds, currentUser, ifNoneMatch, new Object[]{size, hasNext, nextCursor},
+                pollResponses -> new PagedResponse<>(pollResponses, size, !hasNext, pageNextCursor));
+    }
 
-        Sort sort = new Sort(Sort.Direction.DESC, "createdAt");
-        List<Poll> polls = pollRepository.findByIdIn(pollIds, sort);
+    /**
+     * The home feed of the current user (see HomeFeed): the polls created by the users they follow, newest first.
+     * Cursor pagination only, a page is read by queries bounded by its size.
+     */
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PagedResponse<PollResponse>> getHomeFeed(UserPrincipal currentUser, String cursor, int size,
+                                                                        String ifNoneMatch) {
+        validatePageNumberAndSize(0, size);
+
+        // One more tells whether there is a next page
+        List<FeedEntry> entries = homeFeed.getEntries(currentUser.getId(), Cursor.decode(cursor), size + 1);
+
+        boolean hasNext = entries.size() > size;
+        String nextCursor = null;
+        if (hasNext) {
+            entries = entries.subList(0, size);
+            FeedEntry lastEntry = entries.get(size - 1);
+            nextCursor = Cursor.encode(lastEntry.getCreatedAt(), lastEntry.getPollId());
+        }
 
-        // Map Polls to PollResponses containing vote counts and poll creator details
-        Map<Long, Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long, Long> pollUserVoteMap = getPollUserVoteMap(currentUser, pollIds);
-        Map<Long, User> creatorMap = getPollCreatorMap(polls);
+        // Read Polls with their vote counts and poll creator details, unless the client has them already
+        List<Long> pollIds = entries.stream().map(FeedEntry::getPollId).collect(Collectors.toList());
+        String pageNextCursor = nextCursor;
+        return getPollResponsesIfNoneMatch(pollIds, currentUser, ifNoneMatch, new Object[]{size, hasNext, nextCursor},
+                pollResponses -> new PagedResponse<>(pollResponses, size, !hasNext, pageNextCursor));
+    }
 
-        List<PollResponse> pollResponses = polls.stream().map(poll -> {
-            return ModelMapper.mapPollToPollResponse(poll,
-                    choiceVoteCountMap,
-                    creatorMap.get(poll.getCreatedBy()),
-                    pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null));
-        }).collect(Collectors.toList());
+    /**
+     * The polls that received the most votes recently (see TrendingPolls), most trending first
+     */
+    @Transactional(readOnly = true)
+    public List<PollResponse> getTrendingPolls(UserPrincipal currentUser, int size) {
+        validatePageNumberAndSize(0, size);
 
-        return new PagedResponse<>(pollResponses, userVotedPollIds.getNumber(), userVotedPollIds.getSize(),
-                userVotedPollIds.getTotalElements(), userVotedPollIds.getTotalPages(), userVotedPollIds.isLast());
+        return getPollResponses(trendingPolls.getTrendingPollIds(size), currentUser);
     }
 
+    // Poll and Choices are inserted in one transaction, ids come from the pooled generator so the inserts are batched
+    @Transactional
     public Poll createPoll(PollRequest pollRequest) {
         Poll poll = new Poll();
         poll.setQuestion(pollRequest.getQuestion());
@@ -157,119 +280,453 @@ public class PollService {
 
         poll.setExpirationDateTime(expirationDateTime);
 
-        return pollRepository.save(poll);
+        Poll savedPoll = pollRepository.save(poll);
+        // createdBy is set by the auditing when the Poll is persisted
+        if (savedPoll.getCreatedBy() != null) {
+            userRepository.incrementPollCount(savedPoll.getCreatedBy(), 1L);
+        }
+        homeFeed.onPollCreated(savedPoll);
+        return savedPoll;
     }
 
-    public PollResponse getPollById(Long pollId, UserPrincipal currentUser) {
-        Poll poll = pollRepository.findById(pollId).orElseThrow(
-                () -> new ResourceNotFoundException("Poll", "id", Long.toString(pollId)));
+    @Transactional(readOnly = true)
+    public ConditionalResponse<PollResponse> getPollById(Long pollId, UserPrincipal currentUser, String ifNoneMatch) {
+        List<Long> pollIds = Collections.singletonList(pollId);
+        return cacheIfArchived(pollIds, getPollResponsesIfNoneMatch(pollIds, currentUser, ifNoneMatch, new Object[0],
+                pollResponses -> {
+                    if (pollResponses.isEmpty()) {
+                        throw new ResourceNotFoundException("Poll", "id", Long.toString(pollId));
+                    }
+                    return pollResponses.get(0);
+                }));
+    }
 
-        // Retrieve Vote counts of every choice belonging to the current Poll
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdGroupByChoiceId(pollId);
+    /**
+     * The given polls in the order of the ids, for clients showing a set of polls at once: one request read by the
+     * queries of a page rather than one request per poll. Polls that do not exist are left out, repeated ids are read
+     * once.
+     */
+    @Transactional(readOnly = true)
+    public ConditionalResponse<List<PollResponse>> getPollsByIds(List<Long> pollIds, UserPrincipal currentUser,
+                                                                 String ifNoneMatch) {
+        List<Long> distinctPollIds = pollIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if (distinctPollIds.isEmpty()) {
+            throw new BadRequestException("At least one poll id is required.");
+        }
+        if (distinctPollIds.size() > AppConstants.MAX_PAGE_SIZE) {
+            throw new BadRequestException("At most " + AppConstants.MAX_PAGE_SIZE + " polls can be read at once.");
+        }
 
-        Map<Long, Long> choiceVotesMap = votes.stream()
-                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+        return cacheIfArchived(distinctPollIds, getPollResponsesIfNoneMatch(distinctPollIds, currentUser, ifNoneMatch,
+                new Object[0], pollResponses -> pollResponses));
+    }
+
+    @Transactional
+    public PollResponse castVoteAndGetUpdatedPoll(Long pollId, VoteRequest voteRequest, UserPrincipal currentUser) {
+        // Validated against the cached metadata of the Poll, neither the Poll nor its choices are loaded
+        PollMetadata poll = pollMetadataCache.get(pollId);
+        if (poll == null) {
+            throw new ResourceNotFoundException("Poll", "id", Long.toString(pollId));
+        }
 
-        // Retrieve Poll creator details
-        User creator = userRepository.findById(poll.getCreatedBy())
-                .orElseThrow(() -> new ResourceNotFoundException("User", "id", Long.toString(poll.getCreatedBy())));
+        if (poll.isExpiredAt(System.currentTimeMillis())) {
+            throw new BadRequestException("Sorry! This Poll has already expired");
+        }
 
-        // Retrieve Vote done by logged in User
-        Vote userVote = null;
-        if (currentUser != null) {
-            userVote = voteRepository.findByUserIdAndPollId(currentUser.getId(), pollId);
+        Long choiceId = voteRequest.getChoiceId();
+        if (!poll.hasChoice(choiceId)) {
+            throw new ResourceNotFoundException("Choice", "id", Long.toString(choiceId));
         }
 
-        return ModelMapper.mapPollToPollResponse(poll, choiceVotesMap,
-                creator, userVote != null ? userVote.getChoice().getId(): null);
+        Map<Long, Long> choiceVotesMap;
+        if (voteTallyEngine.isEnabled()) {
+            // Count the vote in memory, the VoteTallyEngine writes it to the database in the background
+            if (!voteTallyEngine.recordVote(poll, choiceId, currentUser.getId())) {
+                log.info("User {} has already voted in Poll {}", currentUser.getId(), pollId);
+                throw new BadRequestException("Sorry! You have already cast your vote in this poll");
+            }
+            choiceVotesMap = voteTallyEngine.getChoiceVoteCounts(pollId);
+        } else {
+            choiceVotesMap = saveVote(pollId, choiceId, currentUser);
+        }
+
+        // Notify the watchers of the Poll (once the transaction commits)
+        eventPublisher.publishEvent(new VoteCastEvent(pollId, choiceId, currentUser.getId(),
+                choiceVotesMap.getOrDefault(choiceId, 0L)));
+
+        // Merge the updated counts into the skeleton of the Poll
+        return ModelMapper.mapPollSkeletonToPollResponse(getPollSkeleton(pollId), choiceVotesMap, choiceId);
     }
 
-    public PollResponse castVoteAndGetUpdatedPoll(Long pollId, VoteRequest voteRequest, UserPrincipal currentUser) {
-        Poll poll = pollRepository.findById(pollId)
-                .orElseThrow(() -> new ResourceNotFoundException("Poll", "id", Long.toString(pollId)));
+    /**
+     * Asynchronous votes build on the vote tally: they are counted in memory and written by its background flush
+     */
+    public boolean isAsyncVotingEnabled() {
+        return asyncVotesEnabled && voteTallyEngine.isEnabled();
+    }
+
+    /**
+     * Asynchronous variant of castVoteAndGetUpdatedPoll: the vote is validated against the cached PollSkeleton, counted
+     * by the VoteTallyEngine and queued for its batched writer without waiting for the database. The PollResponse
+     * carries the in-memory counts. A vote retried with the same Idempotency-Key is acknowledged again rather than
+     * rejected as a duplicate, and a full queue is reported as 429 Too Many Requests.
+     */
+    public PollResponse castVoteAsync(Long pollId, VoteRequest voteRequest, UserPrincipal currentUser, String idempotencyKey) {
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > AppConstants.MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new BadRequestException(AppConstants.IDEMPOTENCY_KEY_HEADER + " must be 1 to "
+                    + AppConstants.MAX_IDEMPOTENCY_KEY_LENGTH + " characters long");
+        }
 
-        if (poll.getExpirationDateTime().isBefore(Instant.now())) {
+        PollSkeleton skeleton = getPollSkeleton(pollId);
+        if (skeleton.getExpirationDateTime().isBefore(Instant.now())) {
             throw new BadRequestException("Sorry! This Poll has already expired");
         }
 
-        User user = userRepository.getOne(currentUser.getId());
+        Long choiceId = voteRequest.getChoiceId();
+        if (skeleton.getChoices().stream().noneMatch(choice -> choice.getId().equals(choiceId))) {
+            throw new ResourceNotFoundException("Choice", "id", Long.toString(choiceId));
+        }
+
+        PendingVote vote = new PendingVote(pollId, choiceId, currentUser.getId());
+        PendingVote acknowledgedVote = idempotencyKeyCache.putIfAbsent(currentUser.getId(), idempotencyKey, vote);
+        if (acknowledgedVote != null) {
+            if (!acknowledgedVote.getPollId().equals(pollId) || !acknowledgedVote.getChoiceId().equals(choiceId)) {
+                throw new BadRequestException(AppConstants.IDEMPOTENCY_KEY_HEADER + " has already been used for another vote");
+            }
+            // Retry of a vote that was already acknowledged
+            return ModelMapper.mapPollSkeletonToPollResponse(skeleton, getChoiceVoteCounts(pollId), choiceId);
+        }
+
+        VoteTallyEngine.EnqueueResult result = voteTallyEngine.enqueueVote(skeleton, choiceId, currentUser.getId());
+        if (result != VoteTallyEngine.EnqueueResult.QUEUED) {
+            idempotencyKeyCache.remove(currentUser.getId(), idempotencyKey);
+            if (result == VoteTallyEngine.EnqueueResult.QUEUE_FULL) {
+                throw new TooManyRequestsException("Too many votes are being processed, please try again later");
+            }
+            log.info("User {} has already voted in Poll {}", currentUser.getId(), pollId);
+            throw new BadRequestException("Sorry! You have already cast your vote in this poll");
+        }
+
+        Map<Long, Long> choiceVotesMap = getChoiceVoteCounts(pollId);
+        eventPublisher.publishEvent(new VoteCastEvent(pollId, choiceId, currentUser.getId(),
+                choiceVotesMap.getOrDefault(choiceId, 0L)));
+
+        return ModelMapper.mapPollSkeletonToPollResponse(skeleton, choiceVotesMap, choiceId);
+    }
+
+    /**
+     * Bulk vote ingestion (e.g. importing votes collected elsewhere). Votes go through the batched VoteBatchWriter,
+     * one transaction per chunk of AppConstants.ID_ALLOCATION_SIZE votes. Votes of users that have already voted in
+     * the poll are skipped, returns the number of votes imported.
+     */
+    public int importVotes(BulkVoteRequest bulkVoteRequest) {
+        List<BulkVoteRequest.BulkVote> bulkVotes = bulkVoteRequest.getVotes();
+
+        // Check that every choice belongs to the poll it is voted in
+        List<Long> choiceIds = bulkVotes.stream()
+                .map(BulkVoteRequest.BulkVote::getChoiceId)
+                .distinct()
+                .collect(Collectors.toList());
+        // Read with a projection, no entity (nor lazy Poll) is loaded outside of a transaction
+        List<ChoicePollRow> choicePollRows = choiceRepository.findChoicePollRowsByIdIn(choiceIds);
+        Map<Long, Long> choicePollMap = choicePollRows.stream()
+                .collect(Collectors.toMap(ChoicePollRow::getChoiceId, ChoicePollRow::getPollId));
+        bulkVotes.forEach(bulkVote -> {
+            if (!bulkVote.getPollId().equals(choicePollMap.get(bulkVote.getChoiceId()))) {
+                throw new BadRequestException("Choice " + bulkVote.getChoiceId() + " does not belong to Poll " + bulkVote.getPollId());
+            }
+        });
+        // The results of archived polls are final
+        choicePollRows.stream().filter(row -> row.getPollArchivedAt() != null).findFirst().ifPresent(row -> {
+            throw new BadRequestException("Poll " + row.getPollId() + " is archived, its results are final");
+        });
+
+        List<PendingVote> pendingVotes = bulkVotes.stream()
+                .map(bulkVote -> new PendingVote(bulkVote.getPollId(), bulkVote.getChoiceId(), bulkVote.getUserId()))
+                .collect(Collectors.toList());
+
+        int imported = 0;
+        for (int from = 0; from < pendingVotes.size(); from += AppConstants.ID_ALLOCATION_SIZE) {
+            List<PendingVote> chunk = pendingVotes.subList(from, Math.min(from + AppConstants.ID_ALLOCATION_SIZE, pendingVotes.size()));
+            try {
+                voteBatchWriter.write(chunk);
+                imported += chunk.size();
+            } catch (DataIntegrityViolationException exception) {
+                // Some users of the chunk have already voted, write the votes one at a time to skip those
+                for (PendingVote pendingVote : chunk) {
+                    try {
+                        voteBatchWriter.write(Collections.singletonList(pendingVote));
+                        imported++;
+                    } catch (DataIntegrityViolationException duplicateException) {
+                        log.info("User {} has already voted in Poll {}", pendingVote.getUserId(), pendingVote.getPollId());
+                    }
+                }
+            }
+        }
+
+        // In-memory tallies and vote indexes do not know about the imported votes, they are reloaded on their next use
+        pendingVotes.stream().map(PendingVote::getPollId).distinct().forEach(voteTallyEngine::evict);
+        pendingVotes.stream().map(PendingVote::getUserId).distinct().forEach(userVoteIndex::evict);
 
-        Choice selectedChoice = poll.getChoices().stream()
-                .filter(choice -> choice.getId().equals(voteRequest.getChoiceId()))
-                .findFirst()
-                .orElseThrow(() -> new ResourceNotFoundException("Choice", "id", Long.toString(voteRequest.getChoiceId())));
+        return imported;
+    }
 
+    private Map<Long, Long> saveVote(Long pollId, Long choiceId, UserPrincipal currentUser) {
+        // References only, inserting the Vote needs their ids and nothing else
         Vote vote = new Vote();
-        vote.setPoll(poll);
-        vote.setUser(user);
-        vote.setChoice(selectedChoice);
+        vote.setPoll(pollRepository.getOne(pollId));
+        vote.setUser(userRepository.getOne(currentUser.getId()));
+        vote.setChoice(choiceRepository.getOne(choiceId));
 
         try {
-            vote = voteRepository.save(vote);
+            // Flush right away, the unique constraint on (poll_id, user_id) is only checked when the insert runs
+            voteRepository.saveAndFlush(vote);
         } catch (DataIntegrityViolationException exception) {
             log.info("User {} has already voted in Poll {}", currentUser.getId(), pollId);
             throw new BadRequestException("Sorry! You have already cast your vote in this poll");
         }
 
-        // -- Vote saved, return the updated PollReponse now --
+        // Increment the materialized counters of the selected choice and of the user, committed together with the Vote
+        choiceRepository.incrementVoteCount(choiceId, 1L);
+        userRepository.incrementVoteCount(currentUser.getId(), 1L);
+
+        // -- Vote saved, return the updated vote counts now --
 
         // Retrieve Vote counts of every choice belonging to the current Poll
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdGroupByChoiceId(pollId);
+        List<ChoiceVoteCount> votes = choiceRepository.findVoteCountsByPollId(pollId);
 
-        Map<Long, Long> choiceVotesMap = votes.stream()
+        return votes.stream()
                 .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
-
-        // Retrieve Poll creator details
-        User creator = userRepository.findById(poll.getCreatedBy())
-                .orElseThrow(() -> new ResourceNotFoundException("User", "id", Long.toString(poll.getCreatedBy())));
-
-        return ModelMapper.mapPollToPollResponse(poll, choiceVotesMap, creator, vote.getChoice().getId());
     }
 
     private void validatePageNumberAndSize(int page, int size) {
         if (page < 0) {
             throw new BadRequestException("Page number cannot be less than zero.");
         }
+        if (size < 1) {
+            throw new BadRequestException("Page size must not be less than one.");
+        }
         if (size > AppConstants.MAX_PAGE_SIZE) {
             throw new BadRequestException("Page size must not be greater than " + AppConstants.MAX_PAGE_SIZE);
         }
     }
 
-    private Map<Long, Long> getChoiceVoteCountMap(List<Long> pollIds) {
-        // Retrieve Vote Counts of every Choice belonging to the given pollIds
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdInGroupByChoiceId(pollIds);
+    /**
+     * Read-only assembly of PollResponses, in the order of the given poll ids (polls that do not exist are skipped).
+     * The immutable part of the polls comes from the PollSkeletonCache, polls missing from it are read (with their
+     * counts) by a single projection query and cached. Only the vote counts of the cached polls are read again: from
+     * the vote tally for polls tallied in memory, which is more up to date than the database, and from the choice
+     * counters for the others, except for the archived polls whose final counts are part of the skeleton. The choices
+     * selected by the current user come from the UserVoteIndex.
+     * The three reads only depend on the poll ids, those that need the database run concurrently (ParallelQueries).
+     */
+    private List<PollResponse> getPollResponses(List<Long> pollIds, UserPrincipal currentUser) {
+        if (pollIds.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        Map<Long, Long> choiceVotesMap = votes.stream()
-                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+        Long userId = currentUser != null ? currentUser.getId() : null;
+        Map<Long, PollSkeleton> skeletons = new HashMap<>(pollSkeletonCache.getAllPresent(pollIds));
+        Map<Long, Long> choiceVotesMap = new HashMap<>();
+
+        List<Long> missingPollIds = new ArrayList<>();
+        List<Long> uncountedPollIds = new ArrayList<>();
+        for (Long pollId : pollIds) {
+            PollSkeleton skeleton = skeletons.get(pollId);
+            if (skeleton != null && skeleton.isArchived()) {
+                choiceVotesMap.putAll(skeleton.getFrozenVoteCounts());
+                continue;
+            }
+            Map<Long, Long> talliedVotes = voteTallyEngine.isEnabled() ? voteTallyEngine.getChoiceVoteCounts(pollId) : null;
+            if (talliedVotes != null) {
+                choiceVotesMap.putAll(talliedVotes);
+            }
+            if (skeleton == null) {
+                missingPollIds.add(pollId);
+            } else if (talliedVotes == null) {
+                uncountedPollIds.add(pollId);
+            }
+        }
 
-        return choiceVotesMap;
+        // The branch added last runs on this thread, within the current transaction
+        List<ParallelQueries.Branch<?>> branches = new ArrayList<>();
+        ParallelQueries.Branch<Map<Long, Long>> selectedChoicesBranch = null;
+        if (userId != null && !userVoteIndex.containsAll(userId, pollIds)) {
+            selectedChoicesBranch = parallelQueries.branch("selectedChoices",
+                    () -> userVoteIndex.getSelectedChoices(userId, pollIds));
+            branches.add(selectedChoicesBranch);
+        }
+        ParallelQueries.Branch<List<ChoiceVoteCount>> voteCountsBranch = null;
+        if (!uncountedPollIds.isEmpty()) {
+            voteCountsBranch = parallelQueries.branch("voteCounts",
+                    () -> choiceRepository.findVoteCountsByPollIdIn(uncountedPollIds));
+            branches.add(voteCountsBranch);
+        }
+        ParallelQueries.Branch<List<PollChoiceRow>> pollRowsBranch = null;
+        if (!missingPollIds.isEmpty()) {
+            pollRowsBranch = parallelQueries.branch("pollRows",
+                    () -> pollRepository.findPollChoiceRowsByIdIn(missingPollIds));
+            branches.add(pollRowsBranch);
+        }
+        parallelQueries.runAll(branches);
+
+        if (pollRowsBranch != null) {
+            List<PollChoiceRow> rows = pollRowsBranch.get();
+            rows.forEach(row -> choiceVotesMap.putIfAbsent(row.getChoiceId(), row.getChoiceVoteCount()));
+            ModelMapper.mapPollChoiceRowsToPollSkeletons(rows).forEach(skeleton -> {
+                pollSkeletonCache.put(skeleton);
+                skeletons.put(skeleton.getId(), skeleton);
+            });
+        }
+        if (voteCountsBranch != null) {
+            voteCountsBranch.get()
+                    .forEach(choiceVoteCount -> choiceVotesMap.put(choiceVoteCount.getChoiceId(), choiceVoteCount.getVoteCount()));
+        }
+        Map<Long, Long> pollUserVoteMap = new HashMap<>();
+        if (userId != null) {
+            pollUserVoteMap.putAll(selectedChoicesBranch != null
+                    ? selectedChoicesBranch.get() : userVoteIndex.getSelectedChoices(userId, pollIds));
+            putTalliedVotes(userId, pollIds, pollUserVoteMap);
+        }
+
+        return pollIds.stream()
+                .map(skeletons::get)
+                .filter(Objects::nonNull)
+                .map(skeleton -> ModelMapper.mapPollSkeletonToPollResponse(skeleton, choiceVotesMap,
+                        pollUserVoteMap.get(skeleton.getId())))
+                .collect(Collectors.toList());
     }
 
-    private Map<Long, Long> getPollUserVoteMap(UserPrincipal currentUser, List<Long> pollIds) {
-        // Retrieve Votes done by the logged in user to the given pollIds
-        Map<Long, Long> pollUserVoteMap = null;
-        if (currentUser != null) {
-            List<Vote> userVotes = voteRepository.findByUserIdAndPollIdIn(currentUser.getId(), pollIds);
+    /**
+     * Conditional variant of getPollResponses: the ETag of the response is derived from the vote counts of the polls
+     * and of the choices selected by the current user (see PollETags) and the given page metadata. When every poll is
+     * in the PollSkeletonCache the ETag is checked against If-None-Match first, reading only the vote counts (one query
+     * at most, see getChoiceVoteCounts) and the selected choices (UserVoteIndex), and nothing else is read when it
+     * matches (304 Not Modified). Otherwise the PollResponses are assembled and mapped to the body by toBody.
+     */
+    private <T> ConditionalResponse<T> getPollResponsesIfNoneMatch(List<Long> pollIds, UserPrincipal currentUser, String ifNoneMatch,
+                                                                   Object[] pageState, Function<List<PollResponse>, T> toBody) {
+        Long userId = currentUser != null ? currentUser.getId() : null;
+
+        if (ifNoneMatch != null) {
+            Map<Long, PollSkeleton> skeletons = pollSkeletonCache.getAllPresent(pollIds);
+            if (skeletons.size() == pollIds.size()) {
+                Map<Long, Long> choiceVotesMap = getChoiceVoteCounts(skeletons.values());
+                Map<Long, Long> pollUserVoteMap = new HashMap<>();
+                if (userId != null) {
+                    pollUserVoteMap.putAll(userVoteIndex.getSelectedChoices(userId, pollIds));
+                    putTalliedVotes(userId, pollIds, pollUserVoteMap);
+                }
+                List<PollResponse> pollResponses = pollIds.stream()
+                        .map(pollId -> ModelMapper.mapPollSkeletonToPollResponse(skeletons.get(pollId), choiceVotesMap,
+                                pollUserVoteMap.get(pollId)))
+                        .collect(Collectors.toList());
+                String eTag = PollETags.of(userId, pollResponses, pageState);
+                if (ConditionalResponse.matches(ifNoneMatch, eTag)) {
+                    return ConditionalResponse.notModified(eTag);
+                }
+            }
+        }
+
+        List<PollResponse> pollResponses = getPollResponses(pollIds, currentUser);
+        return ConditionalResponse.of(PollETags.of(userId, pollResponses, pageState), toBody.apply(pollResponses));
+    }
 
-            pollUserVoteMap = userVotes.stream()
-                    .collect(Collectors.toMap(vote -> vote.getPoll().getId(), vote -> vote.getChoice().getId()));
+    /**
+     * Responses made of archived polls only never change: their results are final, no vote can be cast and the
+     * choices selected by the current user are final as well. Clients may keep them for app.archive.maxAgeSeconds
+     * without revalidating.
+     */
+    private <T> ConditionalResponse<T> cacheIfArchived(List<Long> pollIds, ConditionalResponse<T> response) {
+        Map<Long, PollSkeleton> skeletons = pollSkeletonCache.getAllPresent(pollIds);
+        if (skeletons.size() == pollIds.size() && skeletons.values().stream().allMatch(PollSkeleton::isArchived)) {
+            return response.withMaxAge(Duration.ofSeconds(archivedPollMaxAgeSeconds));
         }
+        return response;
+    }
 
-        return pollUserVoteMap;
+    private static Object[] pageState(Slice<?> slice) {
+        if (slice instanceof Page) {
+            Page<?> page = (Page<?>) slice;
+            return new Object[]{page.getNumber(), page.getSize(), page.getTotalElements()};
+        }
+        return new Object[]{slice.getSize(), slice.hasNext()};
     }
 
-    private Map<Long, User> getPollCreatorMap(List<Poll> polls) {
-        // Get Poll Creator details of the given list of polls
-        List<Long> creatorIds = polls.stream()
-                .map(Poll::getCreatedBy)
-                .distinct()
-                .collect(Collectors.toList());
+    // Returns the cached skeleton of the Poll, reading (and caching) it if needed
+    private PollSkeleton getPollSkeleton(Long pollId) {
+        PollSkeleton skeleton = pollSkeletonCache.getIfPresent(pollId);
+        if (skeleton == null) {
+            List<PollSkeleton> skeletons = ModelMapper.mapPollChoiceRowsToPollSkeletons(
+                    pollRepository.findPollChoiceRowsByIdIn(Collections.singletonList(pollId)));
+            if (skeletons.isEmpty()) {
+                throw new ResourceNotFoundException("Poll", "id", Long.toString(pollId));
+            }
+            skeleton = skeletons.get(0);
+            pollSkeletonCache.put(skeleton);
+        }
+        return skeleton;
+    }
+
+    // Votes still queued by the vote tally are not in the database yet
+    private void putTalliedVotes(Long userId, List<Long> pollIds, Map<Long, Long> pollUserVoteMap) {
+        if (!voteTallyEngine.isEnabled()) {
+            return;
+        }
+        for (Long pollId : pollIds) {
+            Long talliedVote = voteTallyEngine.getSelectedChoice(pollId, userId);
+            if (talliedVote != null) {
+                pollUserVoteMap.put(pollId, talliedVote);
+            }
+        }
+    }
+
+    /**
+     * Vote counts of the choices of the given (cached) polls, from the same sources as getPollResponses: the final
+     * counts of the archived polls, the vote tally, and a single query for the others
+     */
+    private Map<Long, Long> getChoiceVoteCounts(Collection<PollSkeleton> skeletons) {
+        Map<Long, Long> choiceVotesMap = new HashMap<>();
+        List<Long> uncountedPollIds = new ArrayList<>();
+        for (PollSkeleton skeleton : skeletons) {
+            if (skeleton.isArchived()) {
+                choiceVotesMap.putAll(skeleton.getFrozenVoteCounts());
+                continue;
+            }
+            Map<Long, Long> talliedVotes = voteTallyEngine.isEnabled() ? voteTallyEngine.getChoiceVoteCounts(skeleton.getId()) : null;
+            if (talliedVotes != null) {
+                choiceVotesMap.putAll(talliedVotes);
+            } else {
+                uncountedPollIds.add(skeleton.getId());
+            }
+        }
+        if (!uncountedPollIds.isEmpty()) {
+            choiceRepository.findVoteCountsByPollIdIn(uncountedPollIds)
+                    .forEach(choiceVoteCount -> choiceVotesMap.put(choiceVoteCount.getChoiceId(), choiceVoteCount.getVoteCount()));
+        }
+        return choiceVotesMap;
+    }
 
-        List<User> creators = userRepository.findByIdIn(creatorIds);
-        Map<Long, User> creatorMap = creators.stream()
-                .collect(Collectors.toMap(User::getId, Function.identity()));
+    // Vote counts of the Poll, from its tally when tallied in memory
+    private Map<Long, Long> getChoiceVoteCounts(Long pollId) {
+        Map<Long, Long> talliedVotes = voteTallyEngine.getChoiceVoteCounts(pollId);
+        if (talliedVotes != null) {
+            return talliedVotes;
+        }
+        return choiceRepository.findVoteCountsByPollId(pollId).stream()
+                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+    }
 
-        return creatorMap;
+    // Returns the cursor of the page following the given slice of poll ids, null on the last page
+    private String nextCursor(Slice<Long> pollIds, List<PollResponse> pollResponses) {
+        if (!pollIds.hasNext() || pollResponses.isEmpty()) {
+            return null;
+        }
+        PollResponse last = pollResponses.get(pollResponses.size() - 1);
+        return Cursor.encode(last.getCreationDateTime(), last.getId());
     }
 
 }
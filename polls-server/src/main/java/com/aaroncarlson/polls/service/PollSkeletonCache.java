@@ -0,0 +1,59 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.PollSkeleton;
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+
+/**
+ * Bounded cache of PollSkeletons keyed by poll id. Skeletons are immutable and so are the polls they are built from,
+ * entries are only dropped when the cache is full (least recently used first) or the Poll is removed (evict).
+ */
+@Component
+public class PollSkeletonCache {
+
+    @Value("${app.pollCache.maxSize}")
+    private long maxSize;
+
+    private Cache<Long, PollSkeleton> skeletons;
+
+    @PostConstruct
+    public void init() {
+        skeletons = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached skeletons of the given polls, polls that are not cached are missing from the map
+     */
+    public Map<Long, PollSkeleton> getAllPresent(Iterable<Long> pollIds) {
+        return skeletons.getAllPresent(pollIds);
+    }
+
+    public PollSkeleton getIfPresent(Long pollId) {
+        return skeletons.getIfPresent(pollId);
+    }
+
+    public void put(PollSkeleton skeleton) {
+        skeletons.put(skeleton.getId(), skeleton);
+    }
+
+    public void evict(Long pollId) {
+        skeletons.invalidate(pollId);
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = skeletons.stats();
+        return new CacheStatistics("polls", skeletons.estimatedSize(),
+                stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.util.LongLongHashMap;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory vote counts of a single Poll, owned by the VoteTallyEngine:
+ *  - one LongAdder per choice, so concurrent votes on the same choice do not contend on a single counter
+ *  - the choice picked by every voter, used to detect duplicate votes and to answer selectedChoice. Voters are
+ *    split across stripes (each one a primitive LongLongHashMap guarded by its own lock) to limit contention
+ */
+class PollTally {
+
+    private static final int VOTER_STRIPES = 16;
+
+    private final Instant expirationDateTime;
+    private final Map<Long, LongAdder> choiceCounts = new HashMap<>();
+    private final LongLongHashMap[] voterStripes = new LongLongHashMap[VOTER_STRIPES];
+
+    PollTally(Instant expirationDateTime, Collection<Long> choiceIds) {
+        this.expirationDateTime = expirationDateTime;
+        choiceIds.forEach(choiceId -> choiceCounts.put(choiceId, new LongAdder()));
+        for (int i = 0; i < VOTER_STRIPES; i++) {
+            voterStripes[i] = new LongLongHashMap();
+        }
+    }
+
+    /**
+     * Records the vote of the given user, returns false if the user has already voted in this Poll
+     */
+    boolean record(long userId, long choiceId) {
+        LongLongHashMap stripe = stripeFor(userId);
+        synchronized (stripe) {
+            if (!stripe.putIfAbsent(userId, choiceId)) {
+                return false;
+            }
+        }
+        choiceCounts.get(choiceId).increment();
+        return true;
+    }
+
+    /**
+     * Undoes a previously recorded vote, used when the vote could not be written to the database
+     */
+    void revert(long userId, long choiceId) {
+        LongLongHashMap stripe = stripeFor(userId);
+        synchronized (stripe) {
+            if (!stripe.remove(userId)) {
+                return;
+            }
+        }
+        choiceCounts.get(choiceId).decrement();
+    }
+
+    Long getSelectedChoice(long userId) {
+        LongLongHashMap stripe = stripeFor(userId);
+        long choiceId;
+        synchronized (stripe) {
+            choiceId = stripe.get(userId, 0L);
+        }
+        return choiceId == 0L ? null : choiceId;
+    }
+
+    Map<Long, Long> getChoiceVoteCounts() {
+        Map<Long, Long> counts = new HashMap<>(choiceCounts.size() * 2);
+        choiceCounts.forEach((choiceId, count) -> counts.put(choiceId, count.sum()));
+        return counts;
+    }
+
+    boolean hasChoice(long choiceId) {
+        return choiceCounts.containsKey(choiceId);
+    }
+
+    boolean isExpiredBefore(Instant instant) {
+        return expirationDateTime.isBefore(instant);
+    }
+
+    private LongLongHashMap stripeFor(long userId) {
+        return voterStripes[(int) (userId & (VOTER_STRIPES - 1))];
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.aaroncarlson.polls.service;
+
+/**
+ * Recent vote counts of a single Poll in time buckets, owned by TrendingPolls:
+ *  - one bucket per minute for the last hour, a ring indexed by epoch minute. When a slot is reused, the count of the
+ *    minute it held is moved to the bucket of its hour, so minutes and hours never count the same vote twice
+ *  - one bucket per hour for the last day, a ring indexed by epoch hour
+ * Buckets are plain int arrays (about 700 bytes per Poll) updated under the lock of the history.
+ */
+class PollVoteHistory {
+
+    static final int MINUTES = 60;
+    static final int HOURS = 24;
+    static final int WINDOW_MINUTES = HOURS * 60;
+
+    private final int[] minuteStarts = new int[MINUTES];
+    private final int[] minuteCounts = new int[MINUTES];
+    private final int[] hourStarts = new int[HOURS];
+    private final int[] hourCounts = new int[HOURS];
+    private int lastVoteMinute;
+
+    synchronized void recordMinute(int epochMinute, int votes) {
+        int slot = epochMinute % MINUTES;
+        if (minuteStarts[slot] != epochMinute) {
+            if (minuteStarts[slot] > epochMinute) {
+                // Older than the minutes kept, count it in its hour
+                recordHourLocked(epochMinute / 60, votes);
+                return;
+            }
+            recordHourLocked(minuteStarts[slot] / 60, minuteCounts[slot]);
+            minuteStarts[slot] = epochMinute;
+            minuteCounts[slot] = 0;
+        }
+        minuteCounts[slot] += votes;
+        lastVoteMinute = Math.max(lastVoteMinute, epochMinute);
+    }
+
+    synchronized void recordHour(int epochHour, int votes) {
+        recordHourLocked(epochHour, votes);
+        lastVoteMinute = Math.max(lastVoteMinute, epochHour * 60);
+    }
+
+    /**
+     * Sum of the votes of the last day, each bucket weighted by 2^(-age / halfLife) so that recent votes count more
+     */
+    synchronized double score(int nowMinute, double halfLifeMinutes) {
+        double score = 0;
+        for (int slot = 0; slot < MINUTES; slot++) {
+            score += weigh(minuteCounts[slot], nowMinute - minuteStarts[slot], halfLifeMinutes);
+        }
+        for (int slot = 0; slot < HOURS; slot++) {
+            // Hour buckets are aged from their middle
+            score += weigh(hourCounts[slot], nowMinute - hourStarts[slot] * 60 - 30, halfLifeMinutes);
+        }
+        return score;
+    }
+
+    synchronized boolean isIdleSince(int epochMinute) {
+        return lastVoteMinute < epochMinute;
+    }
+
+    private void recordHourLocked(int epochHour, int votes) {
+        if (votes == 0) {
+            return;
+        }
+        int slot = epochHour % HOURS;
+        if (hourStarts[slot] != epochHour) {
+            if (hourStarts[slot] > epochHour) {
+                // Older than the hours kept
+                return;
+            }
+            hourStarts[slot] = epochHour;
+            hourCounts[slot] = 0;
+        }
+        hourCounts[slot] += votes;
+    }
+
+    private static double weigh(int votes, int ageMinutes, double halfLifeMinutes) {
+        if (votes == 0 || ageMinutes >= WINDOW_MINUTES) {
+            return 0;
+        }
+        return votes * Math.pow(0.5, Math.max(0, ageMinutes) / halfLifeMinutes);
+    }
+
+}
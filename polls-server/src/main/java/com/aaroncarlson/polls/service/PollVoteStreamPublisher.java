@@ -0,0 +1,258 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.exception.ResourceNotFoundException;
+import com.aaroncarlson.polls.model.ChoiceVoteCount;
+import com.aaroncarlson.polls.payload.PollVoteCounts;
+import com.aaroncarlson.polls.repository.ChoiceRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the vote counts of a Poll to its watchers as Server-Sent Events ("voteCounts" events):
+ *  - on subscription the watcher gets the vote counts of every choice of the Poll. The watcher is registered before the
+ *    counts are read, so a vote counted in between is pushed to it as well, never after these counts
+ *  - afterwards VoteCastEvents are coalesced per Poll and pushed at most app.pollStream.maxPushesPerSecond times a
+ *    second, each push only carries the choices whose count changed since the previous push. The pushed counts are
+ *    absolute (not increments) so a watcher that subscribed in between two pushes never drifts
+ * Each push is serialized once and queued to every watcher of the Poll, watchers never cause a database read after
+ * their subscription. The pushes are written by a pool of app.pollStream.senderPoolSize threads, one watcher at a time
+ * and in order, so that a slow watcher only holds up its own pushes. A watcher with more than
+ * app.pollStream.maxPendingPushes pushes waiting is too slow to keep up and is disconnected.
+ */
+@Slf4j
+@Component
+public class PollVoteStreamPublisher {
+
+    private static final String EVENT_NAME = "voteCounts";
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+    @Autowired
+    private VoteTallyEngine voteTallyEngine;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${app.pollStream.timeoutMs}")
+    private long timeoutMs;
+    @Value("${app.pollStream.senderPoolSize}")
+    private int senderPoolSize;
+    @Value("${app.pollStream.maxPendingPushes}")
+    private int maxPendingPushes;
+
+    private final ConcurrentMap<Long, PollStream> streams = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor senders;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = new ThreadPoolExecutor(senderPoolSize, senderPoolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "poll-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        senders.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    public SseEmitter subscribe(Long pollId) {
+        SseEmitter emitter = createEmitter();
+        Watcher watcher = new Watcher(pollId, emitter);
+        emitter.onCompletion(() -> unsubscribe(watcher));
+        emitter.onTimeout(() -> unsubscribe(watcher));
+        emitter.onError(error -> unsubscribe(watcher));
+
+        // Registered before the counts are read, pushes queued meanwhile are sent after the counts
+        streams.compute(pollId, (id, stream) -> {
+            PollStream pollStream = stream != null ? stream : new PollStream();
+            pollStream.watchers.add(watcher);
+            return pollStream;
+        });
+
+        Map<Long, Long> voteCounts;
+        try {
+            voteCounts = readVoteCounts(pollId);
+        } catch (RuntimeException exception) {
+            unsubscribe(watcher);
+            throw exception;
+        }
+        if (voteCounts.isEmpty()) {
+            unsubscribe(watcher);
+            throw new ResourceNotFoundException("Poll", "id", Long.toString(pollId));
+        }
+
+        synchronized (watcher) {
+            watcher.pendingPushes.addFirst(serialize(new PollVoteCounts(pollId, voteCounts)));
+            watcher.subscribed = true;
+        }
+        deliver(watcher);
+
+        return emitter;
+    }
+
+    // After commit, the vote is only visible to the stream once it has been stored (or tallied)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVoteCast(VoteCastEvent event) {
+        PollStream stream = streams.get(event.getPollId());
+        if (stream == null) {
+            // Nobody is watching the Poll
+            return;
+        }
+        synchronized (stream) {
+            // Events of concurrent votes may arrive out of order, counts only grow
+            stream.changedVoteCounts.merge(event.getChoiceId(), event.getVoteCount(), Math::max);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{1000 / ${app.pollStream.maxPushesPerSecond}}")
+    public void push() {
+        streams.forEach((pollId, stream) -> {
+            Map<Long, Long> changedVoteCounts;
+            synchronized (stream) {
+                if (stream.changedVoteCounts.isEmpty()) {
+                    return;
+                }
+                changedVoteCounts = stream.changedVoteCounts;
+                stream.changedVoteCounts = new HashMap<>();
+            }
+
+            String data = serialize(new PollVoteCounts(pollId, changedVoteCounts));
+            stream.watchers.forEach(watcher -> {
+                synchronized (watcher) {
+                    if (watcher.pendingPushes.size() >= maxPendingPushes) {
+                        log.info("Disconnecting a watcher of Poll {} that does not keep up with the pushes", pollId);
+                        watcher.disconnect();
+                        return;
+                    }
+                    watcher.pendingPushes.addLast(data);
+                }
+                deliver(watcher);
+            });
+        });
+    }
+
+    // Package-private, tests record what is sent to the watchers
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeoutMs);
+    }
+
+    private Map<Long, Long> readVoteCounts(Long pollId) {
+        Map<Long, Long> voteCounts = voteTallyEngine.getChoiceVoteCounts(pollId);
+        if (voteCounts != null) {
+            return voteCounts;
+        }
+        return choiceRepository.findVoteCountsByPollId(pollId).stream()
+                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+    }
+
+    // Hands the pending pushes of the watcher to a sender, unless one is already sending them
+    private void deliver(Watcher watcher) {
+        synchronized (watcher) {
+            if (!watcher.subscribed || watcher.sending || watcher.pendingPushes.isEmpty()) {
+                return;
+            }
+            watcher.sending = true;
+        }
+        try {
+            senders.execute(() -> send(watcher));
+        } catch (RejectedExecutionException exception) {
+            // Shutting down
+            watcher.disconnect();
+        }
+    }
+
+    private void send(Watcher watcher) {
+        while (true) {
+            String data;
+            synchronized (watcher) {
+                data = watcher.pendingPushes.pollFirst();
+                if (data == null) {
+                    watcher.sending = false;
+                    return;
+                }
+            }
+            try {
+                watcher.emitter.send(SseEmitter.event().name(EVENT_NAME).data(data));
+            } catch (IOException | IllegalStateException exception) {
+                // Watcher disconnected
+                log.debug("Could not push vote counts of Poll {}", watcher.pollId, exception);
+                unsubscribe(watcher);
+                return;
+            }
+        }
+    }
+
+    private void unsubscribe(Watcher watcher) {
+        streams.computeIfPresent(watcher.pollId, (id, stream) -> {
+            stream.watchers.remove(watcher);
+            return stream.watchers.isEmpty() ? null : stream;
+        });
+    }
+
+    private String serialize(PollVoteCounts pollVoteCounts) {
+        try {
+            return objectMapper.writeValueAsString(pollVoteCounts);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalStateException("Could not serialize vote counts of Poll " + pollVoteCounts.getPollId(), exception);
+        }
+    }
+
+    private static class PollStream {
+
+        private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+        // Latest vote count of the choices changed since the last push, guarded by the PollStream
+        private Map<Long, Long> changedVoteCounts = new HashMap<>();
+
+    }
+
+    private class Watcher {
+
+        private final Long pollId;
+        private final SseEmitter emitter;
+        // Serialized pushes not sent yet, oldest first, and the state of their delivery, guarded by the Watcher
+        private final Deque<String> pendingPushes = new ArrayDeque<>();
+        // Set once the vote counts read on subscription are queued, pushes queued before wait for them
+        private boolean subscribed;
+        private boolean sending;
+
+        private Watcher(Long pollId, SseEmitter emitter) {
+            this.pollId = pollId;
+            this.emitter = emitter;
+        }
+
+        private void disconnect() {
+            unsubscribe(this);
+            emitter.complete();
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.PollVoteBucket;
+import com.aaroncarlson.polls.repository.VoteRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ranking of the polls that received the most votes recently, served by GET /api/polls/trending:
+ *  - every vote is added to the minute bucket of its Poll (PollVoteHistory) once committed, in constant time
+ *  - the top app.trending.topK polls by decay-weighted score (half-life of app.trending.halfLifeMinutes) are
+ *    recomputed every app.trending.refreshMs, requests only read the last ranking
+ *  - the buckets of the last day are rebuilt from the votes table on startup with two grouped queries (per minute
+ *    for the last hour, per hour before that), can be disabled with app.trending.replayOnStartup
+ * Note: like the vote tally, the buckets only see the votes cast through this node (bulk imports are not counted).
+ */
+@Slf4j
+@Component
+public class TrendingPolls {
+
+    @Autowired
+    private VoteRepository voteRepository;
+    @Value("${app.trending.topK}")
+    private int topK;
+    @Value("${app.trending.halfLifeMinutes}")
+    private double halfLifeMinutes;
+    @Value("${app.trending.replayOnStartup}")
+    private boolean replayOnStartup;
+
+    private final ConcurrentMap<Long, PollVoteHistory> histories = new ConcurrentHashMap<>();
+    private volatile List<Long> trendingPollIds = Collections.emptyList();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayRecentVotes() {
+        if (!replayOnStartup) {
+            return;
+        }
+        int nowMinute = currentMinute();
+        Instant minutesFrom = Instant.ofEpochSecond((nowMinute - PollVoteHistory.MINUTES + 1) * 60L);
+        Instant hoursFrom = Instant.ofEpochSecond((nowMinute / 60 - PollVoteHistory.HOURS + 1) * 3600L);
+
+        List<PollVoteBucket> hourBuckets = voteRepository.countByPollIdGroupByHour(hoursFrom, minutesFrom);
+        hourBuckets.forEach(bucket -> historyOf(bucket.getPollId())
+                .recordHour(bucket.getEpochHour(), bucket.getVoteCount().intValue()));
+        List<PollVoteBucket> minuteBuckets = voteRepository.countByPollIdGroupByMinute(minutesFrom, Instant.now());
+        minuteBuckets.forEach(bucket -> historyOf(bucket.getPollId())
+                .recordMinute(bucket.getEpochMinute(), bucket.getVoteCount().intValue()));
+
+        refresh();
+        log.info("Replayed the recent votes of {} poll(s)", histories.size());
+    }
+
+    // Runs once the Vote is committed (or right away outside of a transaction)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVoteCast(VoteCastEvent event) {
+        historyOf(event.getPollId()).recordMinute(currentMinute(), 1);
+    }
+
+    /**
+     * Returns the ids of the (at most size) trending polls, most trending first
+     */
+    public List<Long> getTrendingPollIds(int size) {
+        List<Long> pollIds = trendingPollIds;
+        return pollIds.subList(0, Math.min(size, pollIds.size()));
+    }
+
+    @Scheduled(fixedDelayString = "${app.trending.refreshMs}")
+    public void refresh() {
+        int nowMinute = currentMinute();
+        histories.values().removeIf(history -> history.isIdleSince(nowMinute - PollVoteHistory.WINDOW_MINUTES));
+
+        // Min-heap of the best polls seen so far, the root is the first one to drop
+        PriorityQueue<ScoredPoll> best = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(ScoredPoll::getScore));
+        for (Map.Entry<Long, PollVoteHistory> entry : histories.entrySet()) {
+            double score = entry.getValue().score(nowMinute, halfLifeMinutes);
+            if (score <= 0) {
+                continue;
+            }
+            if (best.size() < topK) {
+                best.add(new ScoredPoll(entry.getKey(), score));
+            } else if (score > best.peek().getScore()) {
+                best.poll();
+                best.add(new ScoredPoll(entry.getKey(), score));
+            }
+        }
+
+        List<Long> pollIds = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            pollIds.add(best.poll().getPollId());
+        }
+        Collections.reverse(pollIds);
+        trendingPollIds = Collections.unmodifiableList(pollIds);
+    }
+
+    private PollVoteHistory historyOf(Long pollId) {
+        return histories.computeIfAbsent(pollId, id -> new PollVoteHistory());
+    }
+
+    private static int currentMinute() {
+        return (int) (System.currentTimeMillis() / 60_000);
+    }
+
+    private static class ScoredPoll {
+
+        private final Long pollId;
+        private final double score;
+
+        ScoredPoll(Long pollId, double score) {
+            this.pollId = pollId;
+            this.score = score;
+        }
+
+        Long getPollId() {
+            return pollId;
+        }
+
+        double getScore() {
+            return score;
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.User;
+import com.aaroncarlson.polls.model.UserIdentity;
+import com.aaroncarlson.polls.repository.UserRepository;
+import com.aaroncarlson.polls.util.BloomFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Answers the username and email availability checks of the signup form (one per keystroke) without a query when
+ * the value is definitely not taken. The taken usernames and emails are kept in two Bloom filters:
+ *  - built from the users table once the application is ready, and rebuilt every app.identityFilter.rebuildMs
+ *    (resized to the number of users, picks up the users registered through other nodes)
+ *  - updated by AuthController when a user registers
+ * A value the filters may contain (taken, or a false positive) is checked against the database, so is every value
+ * until the filters are built. Values are folded before hashing (case, accents, trailing spaces) so that values the
+ * database collation considers equal always hash the same. Registration itself still relies on the database.
+ */
+@Slf4j
+@Component
+public class UserIdentityFilter {
+
+    private static final int PAGE_SIZE = 10_000;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${app.identityFilter.enabled}")
+    private boolean enabled;
+    @Value("${app.identityFilter.expectedUsers}")
+    private long expectedUsers;
+    @Value("${app.identityFilter.falsePositiveProbability}")
+    private double falsePositiveProbability;
+
+    private volatile Filters filters;
+    // Filters being rebuilt, registrations are added to them as well
+    private volatile Filters rebuiltFilters;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.identityFilter.rebuildMs}", initialDelayString = "${app.identityFilter.rebuildMs}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        Filters newFilters = new Filters(Math.max(expectedUsers, 2 * userRepository.count()), falsePositiveProbability);
+        rebuiltFilters = newFilters;
+
+        long userCount = 0;
+        try {
+            Long afterId = 0L;
+            List<UserIdentity> identities;
+            do {
+                identities = userRepository.findIdentitiesAfter(afterId, PageRequest.of(0, PAGE_SIZE));
+                for (UserIdentity identity : identities) {
+                    newFilters.add(identity.getUsername(), identity.getEmail());
+                    afterId = identity.getId();
+                }
+                userCount += identities.size();
+            } while (identities.size() == PAGE_SIZE);
+
+            filters = newFilters;
+        } finally {
+            rebuiltFilters = null;
+        }
+        log.info("Built the username and email filters of {} user(s) ({} bits each) in {} ms",
+                userCount, newFilters.usernames.getBitCount(), System.currentTimeMillis() - startedAt);
+    }
+
+    public boolean isUsernameAvailable(String username) {
+        Filters current = filters;
+        if (current != null && !current.usernames.mightContain(fold(username))) {
+            meterRegistry.counter("polls.identity.checks", "field", "username", "outcome", "filtered").increment();
+            return true;
+        }
+        meterRegistry.counter("polls.identity.checks", "field", "username", "outcome", "queried").increment();
+        return !userRepository.existsByUsername(username);
+    }
+
+    public boolean isEmailAvailable(String email) {
+        Filters current = filters;
+        if (current != null && !current.emails.mightContain(fold(email))) {
+            meterRegistry.counter("polls.identity.checks", "field", "email", "outcome", "filtered").increment();
+            return true;
+        }
+        meterRegistry.counter("polls.identity.checks", "field", "email", "outcome", "queried").increment();
+        return !userRepository.existsByEmail(email);
+    }
+
+    // Called once the User is saved
+    public void onUserRegistered(User user) {
+        // rebuiltFilters before filters: rebuild publishes the new filters before clearing rebuiltFilters
+        Filters rebuilt = rebuiltFilters;
+        if (rebuilt != null) {
+            rebuilt.add(user.getUsername(), user.getEmail());
+        }
+        Filters current = filters;
+        if (current != null) {
+            current.add(user.getUsername(), user.getEmail());
+        }
+    }
+
+    // Lower case without accents nor trailing spaces, at least as lenient as the case and accent insensitive collations
+    private static String fold(String value) {
+        String folded = Normalizer.normalize(value.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        folded = COMBINING_MARKS.matcher(folded).replaceAll("");
+        int end = folded.length();
+        while (end > 0 && folded.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return folded.substring(0, end);
+    }
+
+    private static final class Filters {
+
+        private final BloomFilter usernames;
+        private final BloomFilter emails;
+
+        private Filters(long expectedUsers, double falsePositiveProbability) {
+            usernames = new BloomFilter(expectedUsers, falsePositiveProbability);
+            emails = new BloomFilter(expectedUsers, falsePositiveProbability);
+        }
+
+        private void add(String username, String email) {
+            usernames.put(fold(username));
+            emails.put(fold(email));
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.VotedChoice;
+import com.aaroncarlson.polls.payload.CacheStatistics;
+import com.aaroncarlson.polls.repository.VoteRepository;
+import com.aaroncarlson.polls.util.LongLongHashMap;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of the choices users picked, answers "which choice did user U pick in polls P1..Pn" for every page
+ * rendered to a logged in user. Each user has its own primitive (pollId -> choiceId) LongLongHashMap, so readers of
+ * different users never share a lock, kept in a bounded cache of users.
+ *  - Polls are loaded lazily: the polls of a lookup that are not in the map are read with a narrow (poll_id, choice_id)
+ *    projection, the polls in which the user has not voted are recorded as well (NO_VOTE) so they are not read again
+ *  - Votes are added on VoteCastEvent once committed, anything else that writes votes through this node (bulk import)
+ *    must call evict
+ *  - Votes cast through other nodes are not seen until the entry of the user expires, app.userVoteIndex.ttlMs after
+ *    it was created, which bounds how long a remote vote (or a NO_VOTE marker made stale by it) goes unnoticed
+ */
+@Component
+public class UserVoteIndex {
+
+    // Choice ids start at 1, 0 marks a poll in which the user has not voted
+    private static final long NO_VOTE = 0L;
+
+    @Value("${app.userVoteIndex.maxUsers}")
+    private long maxUsers;
+    @Value("${app.userVoteIndex.maxPollsPerUser}")
+    private int maxPollsPerUser;
+    @Value("${app.userVoteIndex.ttlMs}")
+    private long ttlMs;
+
+    @Autowired
+    private VoteRepository voteRepository;
+
+    private Cache<Long, LongLongHashMap> votesByUser;
+
+    @PostConstruct
+    public void init() {
+        votesByUser = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the choice the given user picked in each of the given polls, polls in which the user has not voted are
+     * missing from the map
+     */
+    public Map<Long, Long> getSelectedChoices(Long userId, List<Long> pollIds) {
+        Map<Long, Long> selectedChoices = new HashMap<>();
+        List<Long> missingPollIds = new ArrayList<>();
+
+        LongLongHashMap userVotes = votesOf(userId);
+        synchronized (userVotes) {
+            for (Long pollId : pollIds) {
+                long choiceId = userVotes.get(pollId, -1L);
+                if (choiceId < 0) {
+                    missingPollIds.add(pollId);
+                } else if (choiceId != NO_VOTE) {
+                    selectedChoices.put(pollId, choiceId);
+                }
+            }
+        }
+        if (missingPollIds.isEmpty()) {
+            return selectedChoices;
+        }
+
+        // Read outside of the lock, a vote recorded in the meantime is more recent than what was read (putIfAbsent)
+        List<VotedChoice> votedChoices = voteRepository.findVotedChoicesByUserIdAndPollIdIn(userId, missingPollIds);
+        synchronized (userVotes) {
+            for (VotedChoice votedChoice : votedChoices) {
+                userVotes.putIfAbsent(votedChoice.getPollId(), votedChoice.getChoiceId());
+                selectedChoices.put(votedChoice.getPollId(), votedChoice.getChoiceId());
+            }
+            for (Long pollId : missingPollIds) {
+                userVotes.putIfAbsent(pollId, NO_VOTE);
+            }
+        }
+
+        return selectedChoices;
+    }
+
+    /**
+     * Whether getSelectedChoices can answer the given polls without reading the database (at the time of the call)
+     */
+    public boolean containsAll(Long userId, List<Long> pollIds) {
+        // Not counted as a hit or a miss, getSelectedChoices follows
+        LongLongHashMap userVotes = votesByUser.asMap().get(userId);
+        if (userVotes == null) {
+            return false;
+        }
+        synchronized (userVotes) {
+            return pollIds.stream().allMatch(userVotes::containsKey);
+        }
+    }
+
+    // Runs once the Vote is committed (or right away outside of a transaction)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVoteCast(VoteCastEvent event) {
+        // Recorded even for users that are not indexed yet: votes queued by the vote tally are not in the database
+        LongLongHashMap userVotes = votesOf(event.getUserId());
+        synchronized (userVotes) {
+            userVotes.put(event.getPollId(), event.getChoiceId());
+        }
+    }
+
+    public void evict(Long userId) {
+        votesByUser.invalidate(userId);
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = votesByUser.stats();
+        return new CacheStatistics("userVotes", votesByUser.estimatedSize(),
+                stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    private LongLongHashMap votesOf(Long userId) {
+        LongLongHashMap userVotes = votesByUser.get(userId, key -> new LongLongHashMap());
+        // Users browsing a lot of polls start over rather than growing without bound
+        if (userVotes.size() >= maxPollsPerUser) {
+            LongLongHashMap emptyVotes = new LongLongHashMap();
+            votesByUser.asMap().replace(userId, userVotes, emptyVotes);
+            return votesByUser.get(userId, key -> emptyVotes);
+        }
+        return userVotes;
+    }
+
+}
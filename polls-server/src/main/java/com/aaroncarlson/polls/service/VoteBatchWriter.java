@@ -0,0 +1,56 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.Vote;
+import com.aaroncarlson.polls.repository.ChoiceRepository;
+import com.aaroncarlson.polls.repository.PollRepository;
+import com.aaroncarlson.polls.repository.UserRepository;
+import com.aaroncarlson.polls.repository.VoteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a batch of PendingVotes to the votes table in a single transaction, together with the increments of the
+ * materialized vote counters of the voted choices and of the voters (one UPDATE per distinct choice or user instead
+ * of one per vote).
+ * Poll, Choice and User are attached as references (getOne), no entity is loaded to insert a Vote.
+ */
+@Component
+public class VoteBatchWriter {
+
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private ChoiceRepository choiceRepository;
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Transactional
+    public void write(List<PendingVote> pendingVotes) {
+        List<Vote> votes = pendingVotes.stream().map(pendingVote -> {
+            Vote vote = new Vote();
+            vote.setPoll(pollRepository.getOne(pendingVote.getPollId()));
+            vote.setChoice(choiceRepository.getOne(pendingVote.getChoiceId()));
+            vote.setUser(userRepository.getOne(pendingVote.getUserId()));
+            return vote;
+        }).collect(Collectors.toList());
+
+        voteRepository.saveAll(votes);
+        // Surface constraint violations here rather than at commit time
+        voteRepository.flush();
+
+        Map<Long, Long> choiceVoteDeltas = pendingVotes.stream()
+                .collect(Collectors.groupingBy(PendingVote::getChoiceId, Collectors.counting()));
+        choiceVoteDeltas.forEach(choiceRepository::incrementVoteCount);
+        Map<Long, Long> userVoteDeltas = pendingVotes.stream()
+                .collect(Collectors.groupingBy(PendingVote::getUserId, Collectors.counting()));
+        userVoteDeltas.forEach(userRepository::incrementVoteCount);
+    }
+
+}
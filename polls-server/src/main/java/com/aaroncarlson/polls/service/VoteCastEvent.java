@@ -0,0 +1,24 @@
+package com.aaroncarlson.polls.service;
+
+import lombok.Getter;
+
+/**
+ * Published by PollService once a Vote has been counted, carries the voter and the vote count of the selected choice
+ * right after the Vote
+ */
+@Getter
+public class VoteCastEvent {
+
+    private final Long pollId;
+    private final Long choiceId;
+    private final Long userId;
+    private final long voteCount;
+
+    public VoteCastEvent(Long pollId, Long choiceId, Long userId, long voteCount) {
+        this.pollId = pollId;
+        this.choiceId = choiceId;
+        this.userId = userId;
+        this.voteCount = voteCount;
+    }
+
+}
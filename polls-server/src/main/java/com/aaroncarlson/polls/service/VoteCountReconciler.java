@@ -0,0 +1,47 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.repository.ChoiceRepository;
+import com.aaroncarlson.polls.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * The vote counters stored on every Choice, and the poll and vote counters stored on every User, are updated
+ * atomically when a Poll is created or a Vote is cast, however they can still drift from the polls and votes tables
+ * (votes deleted by hand, rows imported directly into the database, an existing database that predates the
+ * counters...). VoteCountReconciler recomputes the counters from the polls and votes tables:
+ *  - once when the application is ready (can be disabled with app.voteCountReconcileOnStartup)
+ *  - periodically, following the app.voteCountReconcileCron expression
+ */
+@Slf4j
+@Component
+public class VoteCountReconciler {
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Value("${app.voteCountReconcileOnStartup}")
+    private boolean reconcileOnStartup;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if (reconcileOnStartup) {
+            reconcileAll();
+        }
+    }
+
+    @Scheduled(cron = "${app.voteCountReconcileCron}")
+    public void reconcileAll() {
+        int updated = choiceRepository.recomputeVoteCounts();
+        log.info("Reconciled vote counters, {} choice(s) corrected", updated);
+        int updatedUsers = userRepository.recomputeActivityCounts();
+        log.info("Reconciled user poll and vote counters, {} user(s) corrected", updatedUsers);
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.PollMetadata;
+import com.aaroncarlson.polls.model.PollSkeleton;
+import com.aaroncarlson.polls.repository.PollRepository;
+import com.aaroncarlson.polls.repository.VoteRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Optional (app.voteTally.enabled) in-process vote tally used by PollService for hot polls. When enabled:
+ *  - votes are counted in memory (one PollTally per Poll) and duplicate votes are detected against the in-memory
+ *    voters of the Poll, without waiting for the unique constraint of the votes table
+ *  - accepted votes are queued and written to the database in batches by a background flush (write-behind). If the
+ *    queue is full the vote is written synchronously, which slows callers down to what the database can absorb
+ *  - votes acknowledged asynchronously (enqueueVote) are never written synchronously, a full queue rejects them so
+ *    that callers can push back on their clients instead
+ *  - tallies of the app.voteTally.replayMaxPolls newest polls that have not expired are rebuilt from the votes table
+ *    on startup, so the counts always reflect what was actually stored, even after a crash lost the votes that were
+ *    still queued. The tallies of the other polls are loaded on their first vote
+ *  - a tally is loaded outside of the tallies map (no database read while holding a lock of the map), from the votes
+ *    table and the votes that are not written yet, so a tally evicted while some of its votes are queued is loaded
+ *    again with them
+ * Note: the tally only knows about the votes cast through this node, it is meant for single node deployments (or
+ * sticky routing of a Poll to one node). The unique constraint of the votes table remains the final arbiter, votes
+ * rejected by it when flushed are removed from the tally.
+ */
+@Slf4j
+@Component
+public class VoteTallyEngine {
+
+    private static final Duration EXPIRED_TALLY_RETENTION = Duration.ofMinutes(5);
+
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private VoteBatchWriter voteBatchWriter;
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+    @Value("${app.voteTally.enabled}")
+    private boolean enabled;
+    @Value("${app.voteTally.queueCapacity}")
+    private int queueCapacity;
+    @Value("${app.voteTally.batchSize}")
+    private int batchSize;
+    @Value("${app.voteTally.replayMaxPolls}")
+    private int replayMaxPolls;
+
+    public enum EnqueueResult { QUEUED, ALREADY_VOTED, QUEUE_FULL }
+
+    private final ConcurrentMap<Long, PollTally> tallies = new ConcurrentHashMap<>();
+    private BlockingQueue<PendingVote> pendingVotes;
+    // Votes accepted but not written yet: queued, or drained by the flush and being written
+    private final Set<PendingVote> unwrittenVotes = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        pendingVotes = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayActivePolls() {
+        if (!enabled) {
+            return;
+        }
+        List<Long> activePollIds = pollRepository.findActivePollIds(Instant.now(), PageRequest.of(0, replayMaxPolls));
+        activePollIds.stream()
+                .map(pollMetadataCache::get)
+                .filter(Objects::nonNull)
+                .forEach(poll -> getOrLoadTally(poll.getId(), Instant.ofEpochMilli(poll.getExpiresAtMillis()),
+                        poll.getChoiceIdList()));
+        log.info("Replayed vote tallies of {} active poll(s)", activePollIds.size());
+    }
+
+    /**
+     * Records the vote in memory and queues it for the database, returns false if the user has already voted. The
+     * choice ids of the Poll are only read when its tally is loaded.
+     */
+    public boolean recordVote(PollMetadata poll, Long choiceId, Long userId) {
+        PollTally tally = getOrLoadTally(poll.getId(), Instant.ofEpochMilli(poll.getExpiresAtMillis()),
+                poll.getChoiceIdList());
+        if (!tally.record(userId, choiceId)) {
+            return false;
+        }
+
+        PendingVote pendingVote = new PendingVote(poll.getId(), choiceId, userId);
+        if (!offer(pendingVote)) {
+            try {
+                voteBatchWriter.write(Collections.singletonList(pendingVote));
+            } catch (DataIntegrityViolationException exception) {
+                tally.revert(userId, choiceId);
+                return false;
+            } catch (RuntimeException exception) {
+                tally.revert(userId, choiceId);
+                throw exception;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the vote in memory and queues it for the database without ever writing it synchronously. The Poll is
+     * described by its skeleton, so that no entity has to be loaded to validate the vote.
+     */
+    public EnqueueResult enqueueVote(PollSkeleton skeleton, Long choiceId, Long userId) {
+        List<Long> choiceIds = skeleton.getChoices().stream()
+                .map(PollSkeleton.ChoiceSkeleton::getId)
+                .collect(Collectors.toList());
+        PollTally tally = getOrLoadTally(skeleton.getId(), skeleton.getExpirationDateTime(), choiceIds);
+        if (!tally.record(userId, choiceId)) {
+            return EnqueueResult.ALREADY_VOTED;
+        }
+
+        if (!offer(new PendingVote(skeleton.getId(), choiceId, userId))) {
+            tally.revert(userId, choiceId);
+            return EnqueueResult.QUEUE_FULL;
+        }
+        return EnqueueResult.QUEUED;
+    }
+
+    /**
+     * Returns the vote count of every choice of the Poll, or null if the Poll is not tallied in memory
+     */
+    public Map<Long, Long> getChoiceVoteCounts(Long pollId) {
+        PollTally tally = tallies.get(pollId);
+        return tally == null ? null : tally.getChoiceVoteCounts();
+    }
+
+    /**
+     * Returns the choice picked by the user, or null if the user has not voted or the Poll is not tallied in memory
+     */
+    public Long getSelectedChoice(Long pollId, Long userId) {
+        PollTally tally = tallies.get(pollId);
+        return tally == null ? null : tally.getSelectedChoice(userId);
+    }
+
+    /**
+     * Drops the tally of the Poll, it is rebuilt from the votes table (and the votes not written yet) the next time a
+     * vote is cast
+     */
+    public void evict(Long pollId) {
+        tallies.remove(pollId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.voteTally.flushIntervalMs}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+
+        List<PendingVote> batch = new ArrayList<>(batchSize);
+        while (pendingVotes.drainTo(batch, batchSize) > 0) {
+            if (!writeBatch(batch)) {
+                // Database unavailable, retry on the next flush
+                break;
+            }
+            batch.clear();
+        }
+
+        Instant evictBefore = Instant.now().minus(EXPIRED_TALLY_RETENTION);
+        tallies.values().removeIf(tally -> tally.isExpiredBefore(evictBefore));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        if (!pendingVotes.isEmpty()) {
+            log.error("{} vote(s) could not be written to the database before shutdown", pendingVotes.size());
+        }
+    }
+
+    private boolean offer(PendingVote pendingVote) {
+        unwrittenVotes.add(pendingVote);
+        if (!pendingVotes.offer(pendingVote)) {
+            unwrittenVotes.remove(pendingVote);
+            return false;
+        }
+        return true;
+    }
+
+    private PollTally getOrLoadTally(Long pollId, Instant expirationDateTime, List<Long> choiceIds) {
+        PollTally tally = tallies.get(pollId);
+        if (tally != null) {
+            return tally;
+        }
+
+        // Loaded outside of the map, concurrent loads of the same Poll are possible and only the first one is kept
+        PollTally loadedTally = new PollTally(expirationDateTime, choiceIds);
+        // Unwritten votes are read before the votes table: a vote written in between is in the one or the other
+        List<PendingVote> unwrittenVotesOfPoll = getUnwrittenVotes(pollId);
+        voteRepository.findVoterChoicesByPollId(pollId).stream()
+                .filter(voterChoice -> loadedTally.hasChoice(voterChoice.getChoiceId()))
+                .forEach(voterChoice -> loadedTally.record(voterChoice.getUserId(), voterChoice.getChoiceId()));
+        unwrittenVotesOfPoll.forEach(pendingVote -> recordUnwritten(loadedTally, pendingVote));
+
+        tally = tallies.putIfAbsent(pollId, loadedTally);
+        if (tally != null) {
+            return tally;
+        }
+        // Votes queued meanwhile by the tally this one replaces (evicted while loading), a vote is only counted once
+        getUnwrittenVotes(pollId).forEach(pendingVote -> recordUnwritten(loadedTally, pendingVote));
+        return loadedTally;
+    }
+
+    private List<PendingVote> getUnwrittenVotes(Long pollId) {
+        return unwrittenVotes.stream()
+                .filter(pendingVote -> pendingVote.getPollId().equals(pollId))
+                .collect(Collectors.toList());
+    }
+
+    private static void recordUnwritten(PollTally tally, PendingVote pendingVote) {
+        if (tally.hasChoice(pendingVote.getChoiceId())) {
+            tally.record(pendingVote.getUserId(), pendingVote.getChoiceId());
+        }
+    }
+
+    private boolean writeBatch(List<PendingVote> batch) {
+        try {
+            voteBatchWriter.write(batch);
+            unwrittenVotes.removeAll(batch);
+            return true;
+        } catch (DataIntegrityViolationException exception) {
+            // At least one vote of the batch was already stored (e.g. cast through another node), write them one
+            // at a time to find out which ones
+            batch.forEach(this::writeSingle);
+            return true;
+        } catch (DataAccessException exception) {
+            log.error("Could not write {} vote(s), will retry", batch.size(), exception);
+            requeue(batch);
+            return false;
+        }
+    }
+
+    private void writeSingle(PendingVote pendingVote) {
+        try {
+            voteBatchWriter.write(Collections.singletonList(pendingVote));
+            unwrittenVotes.remove(pendingVote);
+        } catch (DataIntegrityViolationException exception) {
+            log.info("User {} has already voted in Poll {}", pendingVote.getUserId(), pendingVote.getPollId());
+            unwrittenVotes.remove(pendingVote);
+            revert(pendingVote);
+        } catch (DataAccessException exception) {
+            log.error("Could not write vote of User {} in Poll {}, will retry",
+                    pendingVote.getUserId(), pendingVote.getPollId(), exception);
+            requeue(Collections.singletonList(pendingVote));
+        }
+    }
+
+    private void requeue(List<PendingVote> batch) {
+        batch.forEach(pendingVote -> {
+            if (!pendingVotes.offer(pendingVote)) {
+                log.error("Vote queue is full, dropping vote of User {} in Poll {}",
+                        pendingVote.getUserId(), pendingVote.getPollId());
+                unwrittenVotes.remove(pendingVote);
+                revert(pendingVote);
+            }
+        });
+    }
+
+    private void revert(PendingVote pendingVote) {
+        PollTally tally = tallies.get(pendingVote.getPollId());
+        if (tally != null) {
+            tally.revert(pendingVote.getUserId(), pendingVote.getChoiceId());
+        }
+    }
+
+}
@@ -4,7 +4,15 @@ public interface AppConstants {
 
     String DEFAULT_PAGE_NUMBER = "0";
     String DEFAULT_PAGE_SIZE = "30";
+    String DEFAULT_TRENDING_SIZE = "10";
 
     int MAX_PAGE_SIZE = 50;
 
+    // Number of ids reserved at once from the id_generators table, keep it >= hibernate.jdbc.batch_size
+    int ID_ALLOCATION_SIZE = 50;
+
+    // Header of the votes to acknowledge asynchronously, retries of a vote must send the same key
+    String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
 }
@@ -0,0 +1,48 @@
+package com.aaroncarlson.polls.util;
+
+import com.aaroncarlson.polls.exception.BadRequestException;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in a list sorted by (createdAt DESC, id DESC), used for cursor (keyset) pagination. Clients get it as an
+ * opaque string (nextCursor of a PagedResponse) and send it back to fetch the following page.
+ */
+@Getter
+public class Cursor {
+
+    private final Instant createdAt;
+    private final Long id;
+
+    public Cursor(Instant createdAt, Long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static String encode(Instant createdAt, Long id) {
+        String position = createdAt.getEpochSecond() + ":" + createdAt.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the decoded cursor, or null for an empty cursor (first page)
+     */
+    public static Cursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            Instant createdAt = Instant.ofEpochSecond(Long.parseLong(position[0]), Long.parseLong(position[1]));
+            return new Cursor(createdAt, Long.parseLong(position[2]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException | DateTimeException | ArithmeticException exception) {
+            // Tampered cursors included (an instant out of range for example)
+            throw new BadRequestException("Invalid cursor", exception);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.aaroncarlson.polls.util;
+
+/**
+ * Open addressing (linear probing) hash map from primitive long keys to primitive long values. It avoids the boxed
+ * keys/values and the per-entry objects of a HashMap<Long, Long>, which matters when millions of (userId -> choiceId)
+ * pairs are kept in memory.
+ * Note: key 0 is reserved to mark empty slots (entity ids start at 1) and the map is not thread-safe, callers are
+ * expected to synchronize access themselves.
+ */
+public class LongLongHashMap {
+
+    private static final long EMPTY_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+
+    public LongLongHashMap() {
+        this(8);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2);
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public long get(long key, long defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    public void put(long key, long value) {
+        int index = slotFor(key);
+        if (keys[index] == EMPTY_KEY) {
+            insertAt(index, key, value);
+        } else {
+            values[index] = value;
+        }
+    }
+
+    /**
+     * Associates value with key only if the key is not already present, returns true if the value was stored
+     */
+    public boolean putIfAbsent(long key, long value) {
+        int index = slotFor(key);
+        if (keys[index] != EMPTY_KEY) {
+            return false;
+        }
+        insertAt(index, key, value);
+        return true;
+    }
+
+    public boolean remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+
+        // Backward shift deletion: move following entries of the probe sequence into the gap
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY_KEY) {
+            int ideal = hash(keys[next]);
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY_KEY;
+        values[gap] = 0L;
+        size--;
+        return true;
+    }
+
+    private void insertAt(int index, long key, long value) {
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+    }
+
+    private int indexOf(long key) {
+        int index = slotFor(key);
+        return keys[index] == EMPTY_KEY ? -1 : index;
+    }
+
+    // Returns the slot holding the key, or the empty slot where it would be inserted
+    private int slotFor(long key) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int index = hash(key);
+        while (keys[index] != EMPTY_KEY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int index = slotFor(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+}
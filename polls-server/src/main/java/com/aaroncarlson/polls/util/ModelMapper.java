@@ -1,54 +1,75 @@
 package com.aaroncarlson.polls.util;
 
-import com.aaroncarlson.polls.model.Poll;
-import com.aaroncarlson.polls.model.User;
+import com.aaroncarlson.polls.model.PollChoiceRow;
+import com.aaroncarlson.polls.model.PollSkeleton;
 import com.aaroncarlson.polls.payload.ChoiceResponse;
 import com.aaroncarlson.polls.payload.PollResponse;
 import com.aaroncarlson.polls.payload.UserSummary;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
- * Maps Poll entity to a PollResponse payload which contains a bunch of information like Poll's creator name, Vote counts
- * of each choice in the Poll, the choice that the currently logged in user has voted for, is the Poll expired etc. All this
- * information will be used in the front-end client for presentation.
+ * Maps Polls (read as projection rows, cached as PollSkeletons) to PollResponse payloads which contain a bunch of
+ * information like Poll's creator name, Vote counts of each choice in the Poll, the choice that the currently logged in
+ * user has voted for, is the Poll expired etc. All this information will be used in the front-end client for
+ * presentation.
  */
 public class ModelMapper {
 
-    public static PollResponse mapPollToPollResponse(Poll poll, Map<Long, Long> choiceVotesMap, User creator, Long userVote) {
-        PollResponse pollResponse = new PollResponse();
-        pollResponse.setId(poll.getId());
-        pollResponse.setQuestion(poll.getQuestion());
-        pollResponse.setCreationDateTime(poll.getCreatedAt());
-        pollResponse.setExpirationDateTime(poll.getExpirationDateTime());
-        Instant now = Instant.now();
-        pollResponse.setIsExpired(poll.getExpirationDateTime().isBefore(now));
-
-        List<ChoiceResponse> choiceReponses = poll.getChoices().stream().map(choice -> {
-            ChoiceResponse choiceResponse = new ChoiceResponse();
-            choiceResponse.setId(choice.getId());
-            choiceResponse.setText(choice.getText());
+    /**
+     * Groups the flat rows read by PollRepository.findPollChoiceRowsByIdIn into the PollSkeletons of the polls
+     */
+    public static List<PollSkeleton> mapPollChoiceRowsToPollSkeletons(List<PollChoiceRow> rows) {
+        Map<Long, List<PollChoiceRow>> pollRows = rows.stream()
+                .collect(Collectors.groupingBy(PollChoiceRow::getPollId, LinkedHashMap::new, Collectors.toList()));
 
-            if (choiceVotesMap.containsKey(choice.getId())) {
-                choiceResponse.setVoteCount(choiceVotesMap.get(choice.getId()));
-            } else {
-                choiceResponse.setVoteCount(0);
+        return pollRows.values().stream().map(choiceRows -> {
+            PollChoiceRow row = choiceRows.get(0);
+            List<PollSkeleton.ChoiceSkeleton> choices = choiceRows.stream()
+                    .map(choiceRow -> new PollSkeleton.ChoiceSkeleton(choiceRow.getChoiceId(), choiceRow.getChoiceText()))
+                    .collect(Collectors.toList());
+            UserSummary creatorSummary = new UserSummary(row.getCreatorId(), row.getCreatorUsername(), row.getCreatorName());
+            Map<Long, Long> frozenVoteCounts = null;
+            if (row.getArchivedAt() != null) {
+                frozenVoteCounts = Collections.unmodifiableMap(choiceRows.stream()
+                        .collect(Collectors.toMap(PollChoiceRow::getChoiceId, PollChoiceRow::getChoiceVoteCount)));
             }
-            return choiceResponse;
+            return new PollSkeleton(row.getPollId(), row.getQuestion(), Collections.unmodifiableList(choices),
+                    creatorSummary, row.getCreatedAt(), row.getExpirationDateTime(), frozenVoteCounts);
         }).collect(Collectors.toList());
+    }
 
-        pollResponse.setChoices(choiceReponses);
-        UserSummary creatorSummary = new UserSummary(creator.getId(), creator.getUsername(), creator.getName());
-        pollResponse.setCreatedBy(creatorSummary);
+    /**
+     * Merges the live vote counts (keyed by choice id) and the choice selected by the current user into the skeleton
+     * of the Poll
+     */
+    public static PollResponse mapPollSkeletonToPollResponse(PollSkeleton skeleton, Map<Long, Long> choiceVotesMap, Long userVote) {
+        PollResponse pollResponse = new PollResponse();
+        pollResponse.setId(skeleton.getId());
+        pollResponse.setQuestion(skeleton.getQuestion());
+        pollResponse.setCreationDateTime(skeleton.getCreationDateTime());
+        pollResponse.setExpirationDateTime(skeleton.getExpirationDateTime());
+        pollResponse.setIsExpired(skeleton.getExpirationDateTime().isBefore(Instant.now()));
+        pollResponse.setCreatedBy(skeleton.getCreatedBy());
+        pollResponse.setSelectedChoice(userVote);
 
-        if (userVote != null) {
-            pollResponse.setSelectedChoice(userVote);
+        long totalVotes = 0;
+        List<ChoiceResponse> choiceResponses = new ArrayList<>(skeleton.getChoices().size());
+        for (PollSkeleton.ChoiceSkeleton choice : skeleton.getChoices()) {
+            ChoiceResponse choiceResponse = new ChoiceResponse();
+            choiceResponse.setId(choice.getId());
+            choiceResponse.setText(choice.getText());
+            choiceResponse.setVoteCount(choiceVotesMap.getOrDefault(choice.getId(), 0L));
+            choiceResponses.add(choiceResponse);
+            totalVotes += choiceResponse.getVoteCount();
         }
-
-        long totalVotes = pollResponse.getChoices().stream().mapToLong(ChoiceResponse::getVoteCount).sum();
+        pollResponse.setChoices(choiceResponses);
         pollResponse.setTotalVotes(totalVotes);
 
         return pollResponse;
@@ -0,0 +1,114 @@
+package com.aaroncarlson.polls;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Seeds rows straight into the test database (see application-test.properties), the way rows imported into the
+ * database by hand would look: the materialized counters are left alone. Poll, choice and vote ids start far above
+ * those handed out by the id generators, so the seeded rows never collide with the ones saved by the services, and
+ * every test works on rows of its own in the database shared by the tests of an application context.
+ */
+@Component
+public class TestData {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1_000_000);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Users signing up through AuthController get ROLE_USER
+    public void insertRolesIfAbsent() {
+        if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM roles", Long.class) == 0) {
+            jdbcTemplate.update("INSERT INTO roles (name) VALUES ('ROLE_USER'), ('ROLE_ADMIN')");
+        }
+    }
+
+    public long insertUser() {
+        // Users get their ids from an identity column, like the users signing up
+        String username = "user" + NEXT_ID.getAndIncrement();
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("INSERT INTO users (created_at, updated_at, email, name, password, security_version, " +
+                        "poll_count, vote_count, follower_count, fan_out_on_read, username) " +
+                        "VALUES (?, ?, ?, ?, ?, 0, 0, 0, 0, false, ?)",
+                now, now, username + "@example.com", "Test User", "password", username);
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, username);
+    }
+
+    /**
+     * Inserts a Poll created by the given user, expiring in expiresIn (negative for an expired Poll), with choiceCount
+     * choices. Returns the ids of its choices, the id of the Poll first.
+     */
+    public long[] insertPoll(long creatorId, Duration expiresIn, int choiceCount) {
+        long pollId = NEXT_ID.getAndIncrement();
+        Instant now = Instant.now();
+        Timestamp createdAt = Timestamp.from(now.minus(Duration.ofDays(7)));
+        jdbcTemplate.update("INSERT INTO polls (id, created_at, updated_at, created_by, updated_by, expiration_date_time, " +
+                        "question) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                pollId, createdAt, createdAt, creatorId, creatorId, Timestamp.from(now.plus(expiresIn)), "Question " + pollId);
+
+        long[] ids = new long[choiceCount + 1];
+        ids[0] = pollId;
+        for (int i = 1; i <= choiceCount; i++) {
+            ids[i] = NEXT_ID.getAndIncrement();
+            jdbcTemplate.update("INSERT INTO choices (id, poll_id, text, vote_count) VALUES (?, ?, ?, 0)",
+                    ids[i], pollId, "Choice " + i);
+        }
+        return ids;
+    }
+
+    public long insertVote(long pollId, long choiceId, long userId) {
+        return insertVote(pollId, choiceId, userId, Instant.now());
+    }
+
+    public long insertVote(long pollId, long choiceId, long userId, Instant createdAt) {
+        long voteId = NEXT_ID.getAndIncrement();
+        Timestamp timestamp = Timestamp.from(createdAt);
+        jdbcTemplate.update("INSERT INTO votes (id, created_at, updated_at, choice_id, poll_id, user_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", voteId, timestamp, timestamp, choiceId, pollId, userId);
+        return voteId;
+    }
+
+    // Vote of an archived Poll, as moved by PollArchiver
+    public long insertArchivedVote(long pollId, long choiceId, long userId, Instant createdAt) {
+        long voteId = NEXT_ID.getAndIncrement();
+        jdbcTemplate.update("INSERT INTO archived_votes (id, created_at, choice_id, poll_id, user_id) VALUES (?, ?, ?, ?, ?)",
+                voteId, Timestamp.from(createdAt), choiceId, pollId, userId);
+        return voteId;
+    }
+
+    // Vote cast through another node: the Vote and the counters of its choice and of its user, like PollService
+    public long castVote(long pollId, long choiceId, long userId) {
+        long voteId = insertVote(pollId, choiceId, userId);
+        jdbcTemplate.update("UPDATE choices SET vote_count = vote_count + 1 WHERE id = ?", choiceId);
+        jdbcTemplate.update("UPDATE users SET vote_count = vote_count + 1 WHERE id = ?", userId);
+        return voteId;
+    }
+
+    public String getUsername(long userId) {
+        return jdbcTemplate.queryForObject("SELECT username FROM users WHERE id = ?", String.class, userId);
+    }
+
+    public long getChoiceVoteCount(long choiceId) {
+        return jdbcTemplate.queryForObject("SELECT vote_count FROM choices WHERE id = ?", Long.class, choiceId);
+    }
+
+    public long getUserVoteCount(long userId) {
+        return jdbcTemplate.queryForObject("SELECT vote_count FROM users WHERE id = ?", Long.class, userId);
+    }
+
+    public long getUserPollCount(long userId) {
+        return jdbcTemplate.queryForObject("SELECT poll_count FROM users WHERE id = ?", Long.class, userId);
+    }
+
+    public long countRows(String table, String column, long value) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE " + column + " = ?", Long.class, value);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.aaroncarlson.polls.config;
+
+import com.aaroncarlson.polls.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestBulkheadInterceptorTest {
+
+    private static final String PATTERN = "/api/polls";
+    private static final Callable<String> TASK = () -> "result";
+
+    private final RequestBulkheadInterceptor interceptor = new RequestBulkheadInterceptor();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private HandlerMethod handler;
+
+    @Before
+    public void init() throws Exception {
+        ReflectionTestUtils.setField(interceptor, "enabled", true);
+        ReflectionTestUtils.setField(interceptor, "defaultLimit", 32);
+        ReflectionTestUtils.setField(interceptor, "limits", Collections.singletonMap("GET " + PATTERN, 1));
+        ReflectionTestUtils.setField(interceptor, "meterRegistry", new SimpleMeterRegistry());
+        handler = new HandlerMethod(this, getClass().getMethod("init"));
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void requestOverTheLimitIsRejected() {
+        interceptor.preHandle(request(), response, handler);
+
+        interceptor.preHandle(request(), response, handler);
+    }
+
+    @Test
+    public void permitIsAvailableAgainOnceTheRequestCompletes() {
+        MockHttpServletRequest first = request();
+        interceptor.preHandle(first, response, handler);
+        assertRejected();
+
+        interceptor.afterCompletion(first, response, handler, null);
+
+        assertTrue(interceptor.preHandle(request(), response, handler));
+    }
+
+    @Test
+    public void permitIsHeldUntilTheCallableFinishes() {
+        MockHttpServletRequest first = request();
+        interceptor.preHandle(first, response, handler);
+        ServletWebRequest webRequest = new ServletWebRequest(first);
+        interceptor.preProcess(webRequest, TASK);
+
+        // The request times out while its Callable is still running
+        interceptor.afterCompletion(first, response, handler, null);
+        assertRejected();
+
+        interceptor.postProcess(webRequest, TASK, "result");
+        assertTrue(interceptor.preHandle(request(), response, handler));
+    }
+
+    @Test
+    public void permitOfACallableThatNeverStartedIsReleasedOnCompletion() {
+        MockHttpServletRequest first = request();
+        interceptor.preHandle(first, response, handler);
+
+        interceptor.afterCompletion(first, response, handler, null);
+        // A Callable cancelled by the timeout before starting does not take the permit back
+        interceptor.preProcess(new ServletWebRequest(first), TASK);
+        interceptor.postProcess(new ServletWebRequest(first), TASK, null);
+
+        assertTrue(interceptor.preHandle(request(), response, handler));
+        assertRejected();
+    }
+
+    private void assertRejected() {
+        try {
+            interceptor.preHandle(request(), response, handler);
+            fail("Expected the request to be rejected");
+        } catch (ServiceUnavailableException ex) {
+            // Expected
+        }
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", PATTERN);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, PATTERN);
+        return request;
+    }
+
+}
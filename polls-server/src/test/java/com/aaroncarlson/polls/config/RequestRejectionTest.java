@@ -0,0 +1,73 @@
+package com.aaroncarlson.polls.config;
+
+import com.aaroncarlson.polls.TestData;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Requests the full request executor cannot take are answered with 503 at once, not after the async timeout.
+ * Runs against the embedded server: MockMvc only records the result of a Callable that was started.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.requestExecution.poolSize = 1",
+        "app.requestExecution.queueCapacity = 1"
+})
+@ActiveProfiles("test")
+public class RequestRejectionTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private TestData testData;
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private AsyncTaskExecutor requestExecutor;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void releaseExecutor() {
+        release.countDown();
+    }
+
+    @Test
+    public void requestOverTheFullQueueIsRejectedWithServiceUnavailable() throws Exception {
+        long[] poll = testData.insertPoll(testData.insertUser(), Duration.ofDays(1), 2);
+        // One task on the only thread, one in the queue
+        requestExecutor.execute(this::awaitRelease);
+        requestExecutor.execute(this::awaitRelease);
+
+        long start = System.nanoTime();
+        ResponseEntity<String> response = restTemplate.getForEntity("/api/polls/" + poll[0], String.class);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
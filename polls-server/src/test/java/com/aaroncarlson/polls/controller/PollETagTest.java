@@ -0,0 +1,127 @@
+package com.aaroncarlson.polls.controller;
+
+import com.aaroncarlson.polls.TestData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conditional GETs of polls: the ETag follows the vote counts stored in the database, whoever changed them
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class PollETagTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private TestData testData;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private long voterId;
+    private long[] poll;
+    private long[] otherPoll;
+
+    @Before
+    public void insertPolls() {
+        voterId = testData.insertUser();
+        long creatorId = testData.insertUser();
+        poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        otherPoll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+    }
+
+    @Test
+    public void unchangedPollIsNotModified() throws Exception {
+        String eTag = getETag(poll[0], null, 200);
+
+        assertEquals(eTag, getETag(poll[0], eTag, 304));
+        assertEquals(eTag, getETag(poll[0], "W/" + eTag, 304));
+    }
+
+    @Test
+    public void voteCastThroughThisNodeChangesTheETag() throws Exception {
+        String eTag = getETag(poll[0], null, 200);
+        String token = signUpAndSignIn();
+
+        mockMvc.perform(asyncDispatch(mockMvc.perform(post("/api/polls/" + poll[0] + "/votes")
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"choiceId\": " + poll[1] + "}"))
+                .andReturn()))
+                .andExpect(status().isOk());
+
+        String newETag = getETag(poll[0], eTag, 200);
+        assertNotEquals(eTag, newETag);
+        assertEquals(newETag, getETag(poll[0], newETag, 304));
+    }
+
+    @Test
+    public void voteCastThroughAnotherNodeChangesTheETag() throws Exception {
+        String eTag = getETag(poll[0], null, 200);
+
+        testData.castVote(poll[0], poll[2], voterId);
+
+        assertNotEquals(eTag, getETag(poll[0], eTag, 200));
+    }
+
+    @Test
+    public void voteInAnotherPollKeepsTheETag() throws Exception {
+        String eTag = getETag(poll[0], null, 200);
+
+        testData.castVote(otherPoll[0], otherPoll[1], voterId);
+
+        assertEquals(eTag, getETag(poll[0], eTag, 304));
+    }
+
+    private String getETag(long pollId, String ifNoneMatch, int expectedStatus) throws Exception {
+        RequestBuilder request = ifNoneMatch != null
+                ? get("/api/polls/" + pollId).header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch)
+                : get("/api/polls/" + pollId);
+        MvcResult started = mockMvc.perform(request).andReturn();
+        String eTag = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().is(expectedStatus))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        return eTag;
+    }
+
+    private String signUpAndSignIn() throws Exception {
+        testData.insertRolesIfAbsent();
+        String username = "u" + UUID.randomUUID().toString().substring(0, 12);
+        mockMvc.perform(post("/api/auth/signup").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"Test User\", \"username\": \"" + username + "\", \"email\": \"" + username
+                        + "@example.com\", \"password\": \"password\"}"))
+                .andExpect(status().isCreated());
+        String response = mockMvc.perform(post("/api/auth/signin").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"usernameOrEmail\": \"" + username + "\", \"password\": \"password\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(response).get("accessToken").asText();
+    }
+
+}
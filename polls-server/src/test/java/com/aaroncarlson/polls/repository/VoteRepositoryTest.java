@@ -0,0 +1,86 @@
+package com.aaroncarlson.polls.repository;
+
+import com.aaroncarlson.polls.TestData;
+import com.aaroncarlson.polls.model.VotedPoll;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pages of the polls a user voted in, merged from the live and the archived votes
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class VoteRepositoryTest {
+
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private TestData testData;
+
+    private long userId;
+    // Newest first, alternating between live and archived votes
+    private final List<Long> pollIds = new ArrayList<>();
+
+    @Before
+    public void insertVotes() {
+        userId = testData.insertUser();
+        long creatorId = testData.insertUser();
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        for (int i = 0; i < 6; i++) {
+            long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 1);
+            Instant createdAt = now.minus(Duration.ofMinutes(i));
+            if (i % 2 == 0) {
+                testData.insertVote(poll[0], poll[1], userId, createdAt);
+            } else {
+                testData.insertArchivedVote(poll[0], poll[1], userId, createdAt);
+            }
+            pollIds.add(poll[0]);
+        }
+    }
+
+    @Test
+    public void offsetPagesMergeLiveAndArchivedVotes() {
+        assertEquals(pollIds.subList(0, 2), pollIds(voteRepository.findVotedPollsByUserId(userId, PageRequest.of(0, 2))));
+        assertEquals(pollIds.subList(2, 4), pollIds(voteRepository.findVotedPollsByUserId(userId, PageRequest.of(1, 2))));
+        assertEquals(pollIds.subList(4, 6), pollIds(voteRepository.findVotedPollsByUserId(userId, PageRequest.of(2, 2))));
+        assertEquals(Collections.emptyList(), pollIds(voteRepository.findVotedPollsByUserId(userId, PageRequest.of(3, 2))));
+    }
+
+    @Test
+    public void keysetPagesMergeLiveAndArchivedVotes() {
+        List<Long> seen = new ArrayList<>();
+        List<VotedPoll> page = voteRepository.findVotedPollsByUserIdBefore(userId, null, null, 4);
+        assertEquals(4, page.size());
+        seen.addAll(pollIds(page));
+
+        VotedPoll last = page.get(page.size() - 1);
+        page = voteRepository.findVotedPollsByUserIdBefore(userId, last.getCreatedAt(), last.getVoteId(), 4);
+        seen.addAll(pollIds(page));
+
+        assertEquals(pollIds, seen);
+        assertEquals(Arrays.asList(pollIds.get(4), pollIds.get(5)), pollIds(page));
+    }
+
+    private static List<Long> pollIds(List<VotedPoll> votedPolls) {
+        return votedPolls.stream().map(VotedPoll::getPollId).collect(Collectors.toList());
+    }
+
+}
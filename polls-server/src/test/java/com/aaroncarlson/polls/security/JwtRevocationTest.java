@@ -0,0 +1,91 @@
+package com.aaroncarlson.polls.security;
+
+import com.aaroncarlson.polls.TestData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * JWTs are revoked by bumping the security version of their user, with the user loaded from the database for every
+ * request (default) and with stateless JWTs (StatelessJwtRevocationTest)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class JwtRevocationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserSecurityVersionStore userSecurityVersionStore;
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+    @Autowired
+    private TestData testData;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String username;
+
+    @Before
+    public void signUp() throws Exception {
+        testData.insertRolesIfAbsent();
+        username = "u" + UUID.randomUUID().toString().substring(0, 12);
+        mockMvc.perform(post("/api/auth/signup").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"Test User\", \"username\": \"" + username + "\", \"email\": \"" + username
+                        + "@example.com\", \"password\": \"password\"}"))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    public void tokensIssuedBeforeABumpAreRejected() throws Exception {
+        String oldToken = signIn();
+        mockMvc.perform(get("/api/user/me").header("Authorization", "Bearer " + oldToken))
+                .andExpect(status().isOk());
+
+        userSecurityVersionStore.bumpSecurityVersion(tokenProvider.getUserId(tokenProvider.parseToken(oldToken)));
+
+        mockMvc.perform(get("/api/user/me").header("Authorization", "Bearer " + oldToken))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/user/me").header("Authorization", "Bearer " + signIn()))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void signingOutEverywhereRevokesEveryToken() throws Exception {
+        String token = signIn();
+        String otherToken = signIn();
+
+        mockMvc.perform(post("/api/auth/signoutAll").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/user/me").header("Authorization", "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/user/me").header("Authorization", "Bearer " + otherToken))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private String signIn() throws Exception {
+        String response = mockMvc.perform(post("/api/auth/signin").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"usernameOrEmail\": \"" + username + "\", \"password\": \"password\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(response).get("accessToken").asText();
+    }
+
+}
@@ -0,0 +1,7 @@
+package com.aaroncarlson.polls.security;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "app.jwtStatelessAuth=true")
+public class StatelessJwtRevocationTest extends JwtRevocationTest {
+}
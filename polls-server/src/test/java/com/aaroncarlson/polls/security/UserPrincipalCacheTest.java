@@ -0,0 +1,70 @@
+package com.aaroncarlson.polls.security;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class UserPrincipalCacheTest {
+
+    private final UserPrincipalCache userPrincipalCache = new UserPrincipalCache();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(userPrincipalCache, "maxSize", 100L);
+        ReflectionTestUtils.setField(userPrincipalCache, "ttlMs", 60_000L);
+        userPrincipalCache.init();
+    }
+
+    @Test
+    public void loginsAreLoadedOnceCaseInsensitively() {
+        UserPrincipal first = getByLogin("Alice", 1L);
+
+        assertSame(first, getByLogin("alice", 1L));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void evictDropsEveryEntryOfTheUserOnly() {
+        getByLogin("alice", 1L);
+        getByLogin("alice@example.com", 1L);
+        getByLogin("bob", 2L);
+        userPrincipalCache.getById(1L, id -> load(id));
+        assertEquals(4, loads.get());
+
+        userPrincipalCache.evict(1L);
+
+        getByLogin("alice", 1L);
+        getByLogin("alice@example.com", 1L);
+        getByLogin("bob", 2L);
+        userPrincipalCache.getById(1L, id -> load(id));
+        assertEquals(7, loads.get());
+    }
+
+    @Test
+    public void evictOfAUserThatIsNotCachedDoesNothing() {
+        getByLogin("bob", 2L);
+
+        userPrincipalCache.evict(1L);
+
+        getByLogin("bob", 2L);
+        assertEquals(1, loads.get());
+    }
+
+    private UserPrincipal getByLogin(String usernameOrEmail, Long userId) {
+        return userPrincipalCache.getByUsernameOrEmail(usernameOrEmail, login -> load(userId));
+    }
+
+    private UserPrincipal load(Long userId) {
+        loads.incrementAndGet();
+        return new UserPrincipal(userId, "User " + userId, "user" + userId, "user" + userId + "@example.com",
+                "password", Collections.emptyList(), 0L);
+    }
+
+}
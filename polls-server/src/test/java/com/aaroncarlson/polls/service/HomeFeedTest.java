@@ -0,0 +1,144 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.TestData;
+import com.aaroncarlson.polls.model.FeedEntry;
+import com.aaroncarlson.polls.repository.PollRepository;
+import com.aaroncarlson.polls.util.Cursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Home feeds with small limits: creators with more than two followers are read with the feeds, feeds are trimmed to
+ * three items and a new follow backfills two polls
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"app.feed.fanOutMaxFollowers=2", "app.feed.backfillSize=2", "app.feed.maxItems=3"})
+@ActiveProfiles("test")
+public class HomeFeedTest {
+
+    @Autowired
+    private HomeFeed homeFeed;
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private TestData testData;
+
+    private long creatorId;
+    private String creator;
+    private long followerId;
+
+    @Before
+    public void insertUsers() {
+        creatorId = testData.insertUser();
+        creator = testData.getUsername(creatorId);
+        followerId = testData.insertUser();
+    }
+
+    @Test
+    public void pollsAreCopiedToTheFeedsOfTheFollowers() {
+        long otherUserId = testData.insertUser();
+        homeFeed.follow(followerId, creator);
+
+        long pollId = createPoll();
+
+        assertEquals(Collections.singletonList(pollId), getFeed(followerId));
+        assertEquals(Collections.emptyList(), getFeed(otherUserId));
+        assertEquals(1, testData.countRows("feed_items", "poll_id", pollId));
+    }
+
+    @Test
+    public void followBackfillsTheLatestPollsAndUnfollowRemovesThem() {
+        createPoll();
+        long secondPollId = createPoll();
+        long thirdPollId = createPoll();
+
+        homeFeed.follow(followerId, creator);
+        assertEquals(Arrays.asList(thirdPollId, secondPollId), getFeed(followerId));
+
+        homeFeed.unfollow(followerId, creator);
+        assertEquals(Collections.emptyList(), getFeed(followerId));
+    }
+
+    @Test
+    public void pollsOfPopularCreatorsAreMergedIntoTheFeedsOnRead() {
+        homeFeed.follow(followerId, creator);
+        long copiedPollId = createPoll();
+        homeFeed.follow(testData.insertUser(), creator);
+        // The third follower switches the creator to fan-out on read
+        homeFeed.follow(testData.insertUser(), creator);
+
+        long readPollId = createPoll();
+
+        assertEquals(0, testData.countRows("feed_items", "poll_id", readPollId));
+        // The copied Poll is read from both, and listed once
+        assertEquals(Arrays.asList(readPollId, copiedPollId), getFeed(followerId));
+    }
+
+    @Test
+    public void pagesFollowTheCursorAcrossBothPaths() {
+        homeFeed.follow(followerId, creator);
+        long firstPollId = createPoll();
+        homeFeed.follow(testData.insertUser(), creator);
+        homeFeed.follow(testData.insertUser(), creator);
+        long secondPollId = createPoll();
+        long thirdPollId = createPoll();
+
+        List<FeedEntry> firstPage = homeFeed.getEntries(followerId, null, 2);
+        FeedEntry last = firstPage.get(firstPage.size() - 1);
+        List<FeedEntry> secondPage = homeFeed.getEntries(followerId,
+                new Cursor(last.getCreatedAt(), last.getPollId()), 2);
+
+        assertEquals(Arrays.asList(thirdPollId, secondPollId), pollIds(firstPage));
+        assertEquals(Collections.singletonList(firstPollId), pollIds(secondPage));
+    }
+
+    @Test
+    public void feedsAreTrimmedToTheirNewestItems() {
+        homeFeed.follow(followerId, creator);
+        createPoll();
+        createPoll();
+        long thirdPollId = createPoll();
+        long fourthPollId = createPoll();
+        long fifthPollId = createPoll();
+
+        homeFeed.trimFeeds();
+
+        assertEquals(Arrays.asList(fifthPollId, fourthPollId, thirdPollId), getFeed(followerId));
+        assertEquals(3, testData.countRows("feed_items", "user_id", followerId));
+    }
+
+    // Inserts a Poll of the creator and fans it out, as createPoll does in its transaction
+    private long createPoll() {
+        long pollId = testData.insertPoll(creatorId, Duration.ofDays(1), 2)[0];
+        transactionTemplate.execute(status -> {
+            homeFeed.onPollCreated(pollRepository.findById(pollId).get());
+            return null;
+        });
+        return pollId;
+    }
+
+    private List<Long> getFeed(long userId) {
+        return pollIds(homeFeed.getEntries(userId, null, 10));
+    }
+
+    private static List<Long> pollIds(List<FeedEntry> entries) {
+        return entries.stream().map(FeedEntry::getPollId).collect(Collectors.toList());
+    }
+
+}
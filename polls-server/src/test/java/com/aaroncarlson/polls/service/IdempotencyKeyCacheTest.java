@@ -0,0 +1,58 @@
+package com.aaroncarlson.polls.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IdempotencyKeyCacheTest {
+
+    private final IdempotencyKeyCache idempotencyKeyCache = new IdempotencyKeyCache();
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(idempotencyKeyCache, "maxSize", 100L);
+        ReflectionTestUtils.setField(idempotencyKeyCache, "ttlMs", 60_000L);
+        idempotencyKeyCache.init();
+    }
+
+    @Test
+    public void retryGetsTheFirstVote() {
+        PendingVote first = new PendingVote(1L, 10L, 100L);
+
+        assertNull(idempotencyKeyCache.putIfAbsent(100L, "key", first));
+        assertSame(first, idempotencyKeyCache.putIfAbsent(100L, "key", new PendingVote(1L, 11L, 100L)));
+    }
+
+    @Test
+    public void keysOfDifferentUsersDoNotCollide() {
+        assertNull(idempotencyKeyCache.putIfAbsent(100L, "key", new PendingVote(1L, 10L, 100L)));
+
+        assertNull(idempotencyKeyCache.putIfAbsent(200L, "key", new PendingVote(1L, 10L, 200L)));
+    }
+
+    @Test
+    public void removedKeyCanBeReused() {
+        idempotencyKeyCache.putIfAbsent(100L, "key", new PendingVote(1L, 10L, 100L));
+
+        idempotencyKeyCache.remove(100L, "key");
+
+        PendingVote retry = new PendingVote(1L, 11L, 100L);
+        assertNull(idempotencyKeyCache.putIfAbsent(100L, "key", retry));
+        assertSame(retry, idempotencyKeyCache.putIfAbsent(100L, "key", new PendingVote(1L, 10L, 100L)));
+    }
+
+    @Test
+    public void keysExpireAfterTheirTtl() throws InterruptedException {
+        ReflectionTestUtils.setField(idempotencyKeyCache, "ttlMs", 50L);
+        idempotencyKeyCache.init();
+        idempotencyKeyCache.putIfAbsent(100L, "key", new PendingVote(1L, 10L, 100L));
+
+        Thread.sleep(100);
+
+        assertNull(idempotencyKeyCache.putIfAbsent(100L, "key", new PendingVote(1L, 11L, 100L)));
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.aaroncarlson.polls.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelQueriesTest {
+
+    private final ParallelQueries parallelQueries = new ParallelQueries();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(parallelQueries, "enabled", true);
+        ReflectionTestUtils.setField(parallelQueries, "poolSize", 2);
+        ReflectionTestUtils.setField(parallelQueries, "queueCapacity", 10);
+        ReflectionTestUtils.setField(parallelQueries, "timeoutMs", 5000L);
+        // Room for the branch threads and a single waiting caller
+        ReflectionTestUtils.setField(parallelQueries, "connectionPoolSize", 3);
+        ReflectionTestUtils.setField(parallelQueries, "meterRegistry", new SimpleMeterRegistry());
+        parallelQueries.init();
+    }
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        parallelQueries.shutdown();
+    }
+
+    @Test
+    public void branchesRunConcurrently() {
+        Thread caller = Thread.currentThread();
+        ParallelQueries.Branch<Thread> first = parallelQueries.branch("first", Thread::currentThread);
+        ParallelQueries.Branch<Thread> last = parallelQueries.branch("last", Thread::currentThread);
+
+        parallelQueries.runAll(Arrays.asList(first, last));
+
+        assertNotEquals(caller, first.get());
+        assertEquals(caller, last.get());
+    }
+
+    @Test
+    public void callersOverTheConnectionPoolRunTheirBranchesSequentially() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        ParallelQueries.Branch<Boolean> blocked = parallelQueries.branch("blocked", () -> {
+            started.countDown();
+            return awaitRelease();
+        });
+        CompletableFuture<Void> waitingCaller = CompletableFuture.runAsync(() -> parallelQueries.runAll(
+                Arrays.asList(blocked, parallelQueries.branch("last", () -> true))));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread caller = Thread.currentThread();
+        ParallelQueries.Branch<Thread> first = parallelQueries.branch("first", Thread::currentThread);
+        ParallelQueries.Branch<Thread> last = parallelQueries.branch("last", Thread::currentThread);
+        parallelQueries.runAll(Arrays.asList(first, last));
+
+        assertEquals(caller, first.get());
+        assertEquals(caller, last.get());
+        release.countDown();
+        waitingCaller.get(5, TimeUnit.SECONDS);
+    }
+
+    private boolean awaitRelease() {
+        try {
+            return release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.TestData;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class PollArchiverTest {
+
+    @Autowired
+    private PollArchiver pollArchiver;
+    @Autowired
+    private TestData testData;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void archivesThePollsExpiredLongerThanTheGracePeriod() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long otherVoterId = testData.insertUser();
+        // app.archive.graceMs is 2 days
+        long[] oldPoll = testData.insertPoll(creatorId, Duration.ofDays(-3), 2);
+        long[] recentPoll = testData.insertPoll(creatorId, Duration.ofHours(-1), 2);
+        long voteId = testData.insertVote(oldPoll[0], oldPoll[1], voterId);
+        testData.insertVote(oldPoll[0], oldPoll[1], otherVoterId);
+        testData.insertVote(recentPoll[0], recentPoll[2], voterId);
+
+        pollArchiver.archiveExpiredPolls();
+
+        assertEquals(0, countNotArchived(oldPoll[0]));
+        assertEquals(0, testData.countRows("votes", "poll_id", oldPoll[0]));
+        assertEquals(2, testData.countRows("archived_votes", "poll_id", oldPoll[0]));
+        assertEquals(1, testData.countRows("archived_votes", "id", voteId));
+        // Final results, recomputed from the votes when archived
+        assertEquals(2, testData.getChoiceVoteCount(oldPoll[1]));
+        assertEquals(0, testData.getChoiceVoteCount(oldPoll[2]));
+
+        assertEquals(1, countNotArchived(recentPoll[0]));
+        assertEquals(1, testData.countRows("votes", "poll_id", recentPoll[0]));
+    }
+
+    private long countNotArchived(long pollId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM polls WHERE id = ? AND archived_at IS NULL",
+                Long.class, pollId);
+    }
+
+}
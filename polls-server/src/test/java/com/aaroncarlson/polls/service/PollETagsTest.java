@@ -0,0 +1,50 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.payload.ChoiceResponse;
+import com.aaroncarlson.polls.payload.PollResponse;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class PollETagsTest {
+
+    private static final Long USER_ID = 100L;
+
+    @Test
+    public void sameResponsesGetTheSameETag() {
+        assertEquals(PollETags.of(USER_ID, poll(5L, 10L), 0, 20), PollETags.of(USER_ID, poll(5L, 10L), 0, 20));
+    }
+
+    @Test
+    public void eTagChangesWithTheVoteCounts() {
+        assertNotEquals(PollETags.of(USER_ID, poll(5L, 10L)), PollETags.of(USER_ID, poll(6L, 10L)));
+    }
+
+    @Test
+    public void eTagChangesWithTheSelectedChoiceAlone() {
+        assertNotEquals(PollETags.of(USER_ID, poll(5L, null)), PollETags.of(USER_ID, poll(5L, 10L)));
+    }
+
+    @Test
+    public void eTagChangesWithTheUserAndThePage() {
+        assertNotEquals(PollETags.of(USER_ID, poll(5L, null)), PollETags.of(null, poll(5L, null)));
+        assertNotEquals(PollETags.of(USER_ID, poll(5L, null), 0, 20), PollETags.of(USER_ID, poll(5L, null), 1, 20));
+    }
+
+    private static List<PollResponse> poll(long voteCount, Long selectedChoice) {
+        ChoiceResponse choice = new ChoiceResponse();
+        choice.setId(10L);
+        choice.setVoteCount(voteCount);
+        PollResponse pollResponse = new PollResponse();
+        pollResponse.setId(1L);
+        pollResponse.setIsExpired(false);
+        pollResponse.setChoices(Collections.singletonList(choice));
+        pollResponse.setSelectedChoice(selectedChoice);
+        return Collections.singletonList(pollResponse);
+    }
+
+}
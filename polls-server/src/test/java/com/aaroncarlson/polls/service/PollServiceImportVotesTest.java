@@ -0,0 +1,135 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.TestData;
+import com.aaroncarlson.polls.exception.BadRequestException;
+import com.aaroncarlson.polls.payload.BulkVoteRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class PollServiceImportVotesTest {
+
+    @Autowired
+    private PollService pollService;
+    @Autowired
+    private TestData testData;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void importsVotesAndUpdatesTheCounters() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long otherVoterId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        long[] otherPoll = testData.insertPoll(creatorId, Duration.ofDays(1), 3);
+
+        int imported = pollService.importVotes(request(vote(poll[0], poll[1], voterId),
+                vote(poll[0], poll[1], otherVoterId), vote(otherPoll[0], otherPoll[3], voterId)));
+
+        assertEquals(3, imported);
+        assertEquals(2, testData.getChoiceVoteCount(poll[1]));
+        assertEquals(0, testData.getChoiceVoteCount(poll[2]));
+        assertEquals(1, testData.getChoiceVoteCount(otherPoll[3]));
+        assertEquals(2, testData.getUserVoteCount(voterId));
+        assertEquals(2, testData.countRows("votes", "user_id", voterId));
+    }
+
+    @Test
+    public void skipsTheVotesOfUsersThatHaveAlreadyVoted() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long otherVoterId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        testData.insertVote(poll[0], poll[2], voterId);
+
+        // Already voted, and voting twice within the request
+        int imported = pollService.importVotes(request(vote(poll[0], poll[1], voterId),
+                vote(poll[0], poll[1], otherVoterId), vote(poll[0], poll[2], otherVoterId)));
+
+        assertEquals(1, imported);
+        assertEquals(1, testData.countRows("votes", "user_id", voterId));
+        assertEquals(1, testData.countRows("votes", "user_id", otherVoterId));
+        assertEquals(1, testData.getChoiceVoteCount(poll[1]));
+        assertEquals(1, testData.getUserVoteCount(otherVoterId));
+    }
+
+    @Test
+    public void rejectsUnknownChoicesAndChoicesOfAnotherPoll() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        long[] otherPoll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+
+        try {
+            pollService.importVotes(request(vote(poll[0], poll[1], creatorId), vote(poll[0], otherPoll[1], voterId)));
+            fail("Vote for the choice of another poll was imported");
+        } catch (BadRequestException exception) {
+            assertEquals("Choice " + otherPoll[1] + " does not belong to Poll " + poll[0], exception.getMessage());
+        }
+        try {
+            pollService.importVotes(request(vote(poll[0], Long.MAX_VALUE, voterId)));
+            fail("Vote for an unknown choice was imported");
+        } catch (BadRequestException exception) {
+            assertEquals("Choice " + Long.MAX_VALUE + " does not belong to Poll " + poll[0], exception.getMessage());
+        }
+        assertEquals(0, testData.countRows("votes", "poll_id", poll[0]));
+        assertEquals(0, testData.countRows("votes", "poll_id", otherPoll[0]));
+    }
+
+    @Test
+    public void importsVotesIntoLivePollsAndRejectsArchivedPolls() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long[] livePoll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        long[] archivedPoll = testData.insertPoll(creatorId, Duration.ofDays(-10), 2);
+        jdbcTemplate.update("UPDATE polls SET archived_at = CURRENT_TIMESTAMP WHERE id = ?", archivedPoll[0]);
+
+        assertEquals(1, pollService.importVotes(request(vote(livePoll[0], livePoll[1], voterId))));
+        assertEquals(1, testData.getChoiceVoteCount(livePoll[1]));
+
+        try {
+            pollService.importVotes(request(vote(livePoll[0], livePoll[2], creatorId),
+                    vote(archivedPoll[0], archivedPoll[1], voterId)));
+            fail("Votes of an archived poll were imported");
+        } catch (BadRequestException exception) {
+            assertEquals("Poll " + archivedPoll[0] + " is archived, its results are final", exception.getMessage());
+        }
+        // Nothing of the rejected request is imported
+        assertEquals(0, testData.countRows("votes", "poll_id", archivedPoll[0]));
+        assertEquals(0, testData.countRows("votes", "user_id", creatorId));
+    }
+
+    static BulkVoteRequest request(BulkVoteRequest.BulkVote... votes) {
+        List<BulkVoteRequest.BulkVote> bulkVotes = new ArrayList<>();
+        for (BulkVoteRequest.BulkVote vote : votes) {
+            bulkVotes.add(vote);
+        }
+        BulkVoteRequest request = new BulkVoteRequest();
+        request.setVotes(bulkVotes);
+        return request;
+    }
+
+    static BulkVoteRequest.BulkVote vote(long pollId, long choiceId, long userId) {
+        BulkVoteRequest.BulkVote vote = new BulkVoteRequest.BulkVote();
+        vote.setPollId(pollId);
+        vote.setChoiceId(choiceId);
+        vote.setUserId(userId);
+        return vote;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.aaroncarlson.polls.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollVoteHistoryTest {
+
+    // First minute of an hour, with a half-life long enough for every vote of the window to weigh 1
+    private static final int MINUTE = 60 * 466_667;
+    private static final double NO_DECAY = 1e12;
+    private static final double DELTA = 1e-6;
+
+    private final PollVoteHistory history = new PollVoteHistory();
+
+    @Test
+    public void reusedMinuteSlotMovesItsVotesToTheirHour() {
+        history.recordMinute(MINUTE, 3);
+        history.recordMinute(MINUTE + PollVoteHistory.MINUTES, 1);
+
+        assertEquals(4, history.score(MINUTE + PollVoteHistory.MINUTES, NO_DECAY), DELTA);
+    }
+
+    @Test
+    public void minuteOlderThanItsSlotIsCountedInItsHour() {
+        history.recordMinute(MINUTE + PollVoteHistory.MINUTES, 1);
+        history.recordMinute(MINUTE, 2);
+
+        assertEquals(3, history.score(MINUTE + PollVoteHistory.MINUTES, NO_DECAY), DELTA);
+    }
+
+    @Test
+    public void votesAreHalvedEveryHalfLife() {
+        history.recordMinute(MINUTE, 4);
+
+        assertEquals(4, history.score(MINUTE, 60), DELTA);
+        assertEquals(2, history.score(MINUTE + 60, 60), DELTA);
+    }
+
+    @Test
+    public void hourBucketsAreAgedFromTheirMiddle() {
+        history.recordHour(MINUTE / 60, 8);
+
+        assertEquals(4, history.score(MINUTE + 90, 60), DELTA);
+    }
+
+    @Test
+    public void votesOlderThanTheWindowDoNotCount() {
+        history.recordMinute(MINUTE, 5);
+
+        assertEquals(0, history.score(MINUTE + PollVoteHistory.WINDOW_MINUTES, NO_DECAY), DELTA);
+    }
+
+    @Test
+    public void historyIsIdleSinceItsLastVote() {
+        history.recordMinute(MINUTE, 1);
+
+        assertFalse(history.isIdleSince(MINUTE));
+        assertTrue(history.isIdleSince(MINUTE + 1));
+    }
+
+}
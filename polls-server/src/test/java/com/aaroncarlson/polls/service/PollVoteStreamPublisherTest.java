@@ -0,0 +1,145 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.ChoiceVoteCount;
+import com.aaroncarlson.polls.repository.ChoiceRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PollVoteStreamPublisherTest {
+
+    private static final long POLL_ID = 1L;
+
+    private final ChoiceRepository choiceRepository = mock(ChoiceRepository.class);
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    // Sends to the next emitters wait for it
+    private CountDownLatch sendAllowed = new CountDownLatch(0);
+    private final PollVoteStreamPublisher publisher = new PollVoteStreamPublisher() {
+        @Override
+        SseEmitter createEmitter() {
+            RecordingEmitter emitter = new RecordingEmitter(sendAllowed);
+            emitters.add(emitter);
+            return emitter;
+        }
+    };
+
+    @Before
+    public void init() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        ReflectionTestUtils.setField(publisher, "choiceRepository", choiceRepository);
+        // Not tallied in memory, the counts are read from the choices
+        VoteTallyEngine voteTallyEngine = mock(VoteTallyEngine.class);
+        when(voteTallyEngine.getChoiceVoteCounts(POLL_ID)).thenReturn(null);
+        ReflectionTestUtils.setField(publisher, "voteTallyEngine", voteTallyEngine);
+        ReflectionTestUtils.setField(publisher, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(publisher, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(publisher, "senderPoolSize", 2);
+        ReflectionTestUtils.setField(publisher, "maxPendingPushes", 2);
+        publisher.init();
+        when(choiceRepository.findVoteCountsByPollId(POLL_ID))
+                .thenReturn(Arrays.asList(new ChoiceVoteCount(11L, 2L), new ChoiceVoteCount(12L, 0L)));
+    }
+
+    @After
+    public void shutdown() {
+        emitters.forEach(emitter -> emitter.sendAllowed.countDown());
+        publisher.shutdown();
+    }
+
+    @Test
+    public void aVoteCountedWhileSubscribingIsPushedAfterTheCounts() throws Exception {
+        when(choiceRepository.findVoteCountsByPollId(POLL_ID)).thenAnswer(invocation -> {
+            // The vote lands once the counts are read, before they are sent
+            publisher.onVoteCast(new VoteCastEvent(POLL_ID, 12L, 7L, 1L));
+            return Arrays.asList(new ChoiceVoteCount(11L, 2L), new ChoiceVoteCount(12L, 0L));
+        });
+
+        RecordingEmitter emitter = (RecordingEmitter) publisher.subscribe(POLL_ID);
+        publisher.push();
+
+        assertEquals("{\"pollId\":1,\"voteCounts\":{\"11\":2,\"12\":0}}", emitter.nextPush());
+        assertEquals("{\"pollId\":1,\"voteCounts\":{\"12\":1}}", emitter.nextPush());
+    }
+
+    @Test
+    public void aSlowWatcherDoesNotHoldUpTheOthers() throws Exception {
+        sendAllowed = new CountDownLatch(1);
+        RecordingEmitter slowEmitter = (RecordingEmitter) publisher.subscribe(POLL_ID);
+        sendAllowed = new CountDownLatch(0);
+        RecordingEmitter emitter = (RecordingEmitter) publisher.subscribe(POLL_ID);
+        assertEquals("{\"pollId\":1,\"voteCounts\":{\"11\":2,\"12\":0}}", emitter.nextPush());
+
+        publisher.onVoteCast(new VoteCastEvent(POLL_ID, 11L, 7L, 3L));
+        publisher.push();
+
+        assertEquals("{\"pollId\":1,\"voteCounts\":{\"11\":3}}", emitter.nextPush());
+        assertNull(slowEmitter.pushes.poll(100, TimeUnit.MILLISECONDS));
+
+        // Still behind when more pushes come, it is disconnected. The other one is sent every push before the next
+        // one, as with the pushes spaced by the scheduler, or it would be disconnected as well
+        for (long voteCount = 4; voteCount <= 6; voteCount++) {
+            publisher.onVoteCast(new VoteCastEvent(POLL_ID, 11L, voteCount, voteCount));
+            publisher.push();
+            assertEquals("{\"pollId\":1,\"voteCounts\":{\"11\":" + voteCount + "}}", emitter.nextPush());
+        }
+        assertTrue(slowEmitter.completed);
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final BlockingQueue<String> pushes = new LinkedBlockingQueue<>();
+        private final CountDownLatch sendAllowed;
+        private volatile boolean completed;
+
+        private RecordingEmitter(CountDownLatch sendAllowed) {
+            this.sendAllowed = sendAllowed;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                sendAllowed.await();
+            } catch (InterruptedException exception) {
+                throw new IOException(exception);
+            }
+            builder.build().stream()
+                    .map(DataWithMediaType::getData)
+                    .filter(data -> data instanceof String && ((String) data).startsWith("{"))
+                    .forEach(data -> pushes.add((String) data));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        private String nextPush() throws InterruptedException {
+            String push = pushes.poll(5, TimeUnit.SECONDS);
+            if (push == null) {
+                throw new AssertionError("Nothing pushed");
+            }
+            return push;
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.aaroncarlson.polls.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrendingPollsTest {
+
+    private final TrendingPolls trendingPolls = new TrendingPolls();
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(trendingPolls, "topK", 2);
+        ReflectionTestUtils.setField(trendingPolls, "halfLifeMinutes", 60.0);
+    }
+
+    @Test
+    public void topPollsAreRankedByRecentVotes() {
+        vote(1L, 3);
+        vote(2L, 1);
+        vote(3L, 2);
+
+        trendingPolls.refresh();
+
+        assertEquals(Arrays.asList(1L, 3L), trendingPolls.getTrendingPollIds(10));
+        assertEquals(Collections.singletonList(1L), trendingPolls.getTrendingPollIds(1));
+    }
+
+    @Test
+    public void rankingOnlyChangesOnRefresh() {
+        vote(1L, 1);
+        trendingPolls.refresh();
+
+        vote(2L, 2);
+
+        assertEquals(Collections.singletonList(1L), trendingPolls.getTrendingPollIds(10));
+        trendingPolls.refresh();
+        assertEquals(Arrays.asList(2L, 1L), trendingPolls.getTrendingPollIds(10));
+    }
+
+    private void vote(Long pollId, int votes) {
+        for (int i = 0; i < votes; i++) {
+            trendingPolls.onVoteCast(new VoteCastEvent(pollId, 10L, 100L + i, i + 1));
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.model.VotedChoice;
+import com.aaroncarlson.polls.repository.VoteRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserVoteIndexTest {
+
+    private static final Long USER_ID = 100L;
+    private static final List<Long> POLL_IDS = Collections.singletonList(1L);
+
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final UserVoteIndex userVoteIndex = new UserVoteIndex();
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(userVoteIndex, "voteRepository", voteRepository);
+        ReflectionTestUtils.setField(userVoteIndex, "maxUsers", 100L);
+        ReflectionTestUtils.setField(userVoteIndex, "maxPollsPerUser", 16);
+        ReflectionTestUtils.setField(userVoteIndex, "ttlMs", 100L);
+        userVoteIndex.init();
+        when(voteRepository.findVotedChoicesByUserIdAndPollIdIn(eq(USER_ID), anyList())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void pollsWithoutVoteAreNotReadAgain() {
+        assertTrue(userVoteIndex.getSelectedChoices(USER_ID, POLL_IDS).isEmpty());
+        assertTrue(userVoteIndex.getSelectedChoices(USER_ID, POLL_IDS).isEmpty());
+
+        verify(voteRepository, times(1)).findVotedChoicesByUserIdAndPollIdIn(USER_ID, POLL_IDS);
+    }
+
+    @Test
+    public void votesCastThroughThisNodeAreRecorded() {
+        userVoteIndex.getSelectedChoices(USER_ID, POLL_IDS);
+
+        userVoteIndex.onVoteCast(new VoteCastEvent(1L, 10L, USER_ID, 1L));
+
+        assertEquals(Collections.singletonMap(1L, 10L), userVoteIndex.getSelectedChoices(USER_ID, POLL_IDS));
+    }
+
+    @Test
+    public void votesCastThroughAnotherNodeAreSeenOnceTheEntryExpires() throws InterruptedException {
+        assertTrue(userVoteIndex.getSelectedChoices(USER_ID, POLL_IDS).isEmpty());
+        when(voteRepository.findVotedChoicesByUserIdAndPollIdIn(eq(USER_ID), anyList()))
+                .thenReturn(Collections.singletonList(new VotedChoice(1L, 10L)));
+
+        Thread.sleep(200);
+
+        assertEquals(Collections.singletonMap(1L, 10L), userVoteIndex.getSelectedChoices(USER_ID, POLL_IDS));
+    }
+
+}
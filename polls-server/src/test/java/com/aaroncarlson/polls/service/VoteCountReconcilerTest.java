@@ -0,0 +1,61 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.TestData;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class VoteCountReconcilerTest {
+
+    @Autowired
+    private VoteCountReconciler voteCountReconciler;
+    @Autowired
+    private TestData testData;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void reconcileAllRecomputesDriftedCounters() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long otherVoterId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        // Votes inserted without their counters, and a counter that is ahead of the votes
+        testData.insertVote(poll[0], poll[1], voterId);
+        testData.insertVote(poll[0], poll[1], otherVoterId);
+        jdbcTemplate.update("UPDATE choices SET vote_count = 5 WHERE id = ?", poll[2]);
+
+        voteCountReconciler.reconcileAll();
+
+        assertEquals(2, testData.getChoiceVoteCount(poll[1]));
+        assertEquals(0, testData.getChoiceVoteCount(poll[2]));
+        assertEquals(1, testData.getUserPollCount(creatorId));
+        assertEquals(1, testData.getUserVoteCount(voterId));
+        assertEquals(1, testData.getUserVoteCount(otherVoterId));
+    }
+
+    @Test
+    public void reconcileAllLeavesTheFinalResultsOfArchivedPollsAlone() {
+        long creatorId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(-10), 2);
+        // The votes of an archived Poll are in archived_votes, its counters are its final results
+        jdbcTemplate.update("UPDATE polls SET archived_at = CURRENT_TIMESTAMP WHERE id = ?", poll[0]);
+        jdbcTemplate.update("UPDATE choices SET vote_count = 3 WHERE id = ?", poll[1]);
+
+        voteCountReconciler.reconcileAll();
+
+        assertEquals(3, testData.getChoiceVoteCount(poll[1]));
+    }
+
+}
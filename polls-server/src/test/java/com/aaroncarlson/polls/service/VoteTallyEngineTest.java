@@ -0,0 +1,103 @@
+package com.aaroncarlson.polls.service;
+
+import com.aaroncarlson.polls.TestData;
+import com.aaroncarlson.polls.model.PollMetadata;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// The scheduled flush only runs on startup, the tests flush themselves
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"app.voteTally.enabled=true", "app.voteTally.flushIntervalMs=3600000",
+        "app.voteTally.replayMaxPolls=1"})
+@ActiveProfiles("test")
+public class VoteTallyEngineTest {
+
+    @Autowired
+    private VoteTallyEngine voteTallyEngine;
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+    @Autowired
+    private TestData testData;
+
+    @Test
+    public void votesAreCountedInMemoryAndWrittenByTheFlush() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        // Stored before the tally is loaded
+        testData.insertVote(poll[0], poll[2], creatorId);
+        PollMetadata pollMetadata = pollMetadataCache.get(poll[0]);
+
+        assertTrue(voteTallyEngine.recordVote(pollMetadata, poll[1], voterId));
+        assertFalse(voteTallyEngine.recordVote(pollMetadata, poll[2], voterId));
+        assertFalse(voteTallyEngine.recordVote(pollMetadata, poll[1], creatorId));
+
+        Map<Long, Long> counts = voteTallyEngine.getChoiceVoteCounts(poll[0]);
+        assertEquals(1L, counts.get(poll[1]).longValue());
+        assertEquals(1L, counts.get(poll[2]).longValue());
+        assertEquals(poll[1], voteTallyEngine.getSelectedChoice(poll[0], voterId).longValue());
+        // Write-behind: not in the database until flushed
+        assertEquals(0, testData.countRows("votes", "user_id", voterId));
+
+        voteTallyEngine.flush();
+
+        assertEquals(1, testData.countRows("votes", "user_id", voterId));
+        assertEquals(1, testData.getChoiceVoteCount(poll[1]));
+        assertEquals(1, testData.getUserVoteCount(voterId));
+    }
+
+    @Test
+    public void votesQueuedWhenTheTallyIsEvictedAreCountedWhenItIsLoadedAgain() {
+        long creatorId = testData.insertUser();
+        long voterId = testData.insertUser();
+        long otherVoterId = testData.insertUser();
+        long[] poll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        PollMetadata pollMetadata = pollMetadataCache.get(poll[0]);
+
+        assertTrue(voteTallyEngine.recordVote(pollMetadata, poll[1], voterId));
+        voteTallyEngine.evict(poll[0]);
+        assertTrue(voteTallyEngine.recordVote(pollMetadata, poll[2], otherVoterId));
+
+        Map<Long, Long> counts = voteTallyEngine.getChoiceVoteCounts(poll[0]);
+        assertEquals(1L, counts.get(poll[1]).longValue());
+        assertEquals(1L, counts.get(poll[2]).longValue());
+        // The queued vote still counts as a vote of its user
+        assertFalse(voteTallyEngine.recordVote(pollMetadata, poll[2], voterId));
+
+        voteTallyEngine.flush();
+        voteTallyEngine.evict(poll[0]);
+        assertTrue(voteTallyEngine.recordVote(pollMetadata, poll[1], creatorId));
+
+        counts = voteTallyEngine.getChoiceVoteCounts(poll[0]);
+        assertEquals(2L, counts.get(poll[1]).longValue());
+        assertEquals(1L, counts.get(poll[2]).longValue());
+        voteTallyEngine.flush();
+    }
+
+    @Test
+    public void replayLoadsTheTalliesOfTheNewestActivePollsOnly() {
+        long creatorId = testData.insertUser();
+        long[] olderPoll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+        long[] newerPoll = testData.insertPoll(creatorId, Duration.ofDays(1), 2);
+
+        voteTallyEngine.replayActivePolls();
+
+        // Counts are only served from memory for the polls tallied
+        assertNotNull(voteTallyEngine.getChoiceVoteCounts(newerPoll[0]));
+        assertNull(voteTallyEngine.getChoiceVoteCounts(olderPoll[0]));
+    }
+
+}
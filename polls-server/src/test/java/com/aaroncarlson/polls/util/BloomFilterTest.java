@@ -0,0 +1,70 @@
+package com.aaroncarlson.polls.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    private static final int INSERTIONS = 10_000;
+
+    @Test
+    public void isSizedForTheFalsePositiveProbability() {
+        BloomFilter bloomFilter = new BloomFilter(INSERTIONS, 0.01);
+
+        // About 9.6 bits per element and 7 hash functions for 1%, rounded up to whole words
+        assertEquals(95_872, bloomFilter.getBitCount());
+        assertEquals(7, bloomFilter.getHashCount());
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        BloomFilter bloomFilter = new BloomFilter(INSERTIONS, 0.01);
+
+        assertFalse(bloomFilter.mightContain("alice"));
+        assertFalse(bloomFilter.mightContain(""));
+    }
+
+    @Test
+    public void insertedValuesAreAlwaysFound() {
+        BloomFilter bloomFilter = new BloomFilter(INSERTIONS, 0.01);
+        IntStream.range(0, INSERTIONS).forEach(i -> bloomFilter.put("user" + i));
+
+        IntStream.range(0, INSERTIONS).forEach(i -> assertTrue(bloomFilter.mightContain("user" + i)));
+    }
+
+    @Test
+    public void falsePositiveRateIsCloseToTheTarget() {
+        BloomFilter bloomFilter = new BloomFilter(INSERTIONS, 0.01);
+        IntStream.range(0, INSERTIONS).forEach(i -> bloomFilter.put("user" + i));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> bloomFilter.mightContain("other" + i))
+                .count();
+
+        assertTrue("False positives: " + falsePositives, falsePositives < 2_000);
+    }
+
+    @Test
+    public void concurrentPutsAreNotLost() {
+        BloomFilter bloomFilter = new BloomFilter(INSERTIONS, 0.01);
+
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            int from = writer * INSERTIONS / 4;
+            writers.add(CompletableFuture.runAsync(() -> IntStream.range(from, from + INSERTIONS / 4)
+                    .forEach(i -> bloomFilter.put("user" + i))));
+        }
+        writers.forEach(CompletableFuture::join);
+
+        IntStream.range(0, INSERTIONS).forEach(i -> assertTrue(bloomFilter.mightContain("user" + i)));
+    }
+
+}
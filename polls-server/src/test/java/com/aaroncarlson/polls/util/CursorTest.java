@@ -0,0 +1,56 @@
+package com.aaroncarlson.polls.util;
+
+import com.aaroncarlson.polls.exception.BadRequestException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CursorTest {
+
+    @Test
+    public void decodesWhatItEncodes() {
+        Instant createdAt = Instant.parse("2019-03-01T10:15:30.123456789Z");
+
+        Cursor cursor = Cursor.decode(Cursor.encode(createdAt, 42L));
+
+        assertEquals(createdAt, cursor.getCreatedAt());
+        assertEquals(42L, cursor.getId().longValue());
+    }
+
+    @Test
+    public void emptyCursorIsTheFirstPage() {
+        assertNull(Cursor.decode(null));
+        assertNull(Cursor.decode(""));
+    }
+
+    @Test
+    public void malformedCursorsAreBadRequests() {
+        assertBadRequest("not base64!");
+        assertBadRequest(encode("1551435330:0"));
+        assertBadRequest(encode("a:b:c"));
+        // Out of the range of Instant
+        assertBadRequest(encode(Long.MAX_VALUE + ":0:1"));
+        assertBadRequest(encode("-9223372036854775808:999999999:1"));
+        assertBadRequest(encode("31556889864403199:999999999999:1"));
+    }
+
+    private static String encode(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertBadRequest(String cursor) {
+        try {
+            Cursor.decode(cursor);
+            fail("Cursor " + cursor + " was decoded");
+        } catch (BadRequestException exception) {
+            assertEquals("Invalid cursor", exception.getMessage());
+        }
+    }
+
+}
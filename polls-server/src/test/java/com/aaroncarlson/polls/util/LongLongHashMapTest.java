@@ -0,0 +1,66 @@
+package com.aaroncarlson.polls.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongLongHashMapTest {
+
+    @Test
+    public void putGetAndRemove() {
+        LongLongHashMap map = new LongLongHashMap();
+        map.put(1L, 10L);
+        map.put(2L, 20L);
+        map.put(1L, 11L);
+
+        assertEquals(2, map.size());
+        assertEquals(11L, map.get(1L, -1L));
+        assertEquals(-1L, map.get(3L, -1L));
+        assertTrue(map.remove(1L));
+        assertFalse(map.remove(1L));
+        assertFalse(map.containsKey(1L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void putIfAbsentKeepsTheFirstValue() {
+        LongLongHashMap map = new LongLongHashMap();
+
+        assertTrue(map.putIfAbsent(7L, 70L));
+        assertFalse(map.putIfAbsent(7L, 71L));
+        assertEquals(70L, map.get(7L, 0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyZeroIsReserved() {
+        new LongLongHashMap().put(0L, 1L);
+    }
+
+    @Test
+    public void behavesLikeAHashMapThroughResizesAndRemovals() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Small key range, so that probe sequences are long and removals shift entries back
+            long key = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                assertEquals(expected.putIfAbsent(key, (long) i) == null, map.putIfAbsent(key, i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 5_000; key++) {
+            assertEquals(expected.getOrDefault(key, 0L).longValue(), map.get(key, 0L));
+        }
+    }
+
+}